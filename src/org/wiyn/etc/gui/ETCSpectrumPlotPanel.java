@@ -273,7 +273,7 @@ public class ETCSpectrumPlotPanel extends JPanel implements PiptData {
 		// sample the data into the tmp array
 		npix -= npix % kpix;
 		for (int i = 0; i < npix; i++) {
-			kdata[i / kbin] += spectrum.y[i + i0];
+			kdata[i / kbin] += spectrum.y(i + i0);
 
 		}
 
@@ -102,8 +102,14 @@ public class SpectrumViewPanel extends JPanel {
 	double scale = theObjectPlot.getYmaxPlot ();
 	if (scale == 0)
 	    scale = 1;
-	Grid scaled = new Grid (throughput);
-	scaled.resample (1);
+	Grid scaled;
+	if (throughput.k () < 1) {
+	    // the cached coarse level is only read
+	    scaled = throughput.pyramidLevel (1);
+	} else {
+	    scaled = new Grid (throughput);
+	    scaled.resample (1);
+	}
 	scaled.write ("througput.dat");
 	// scaled.scale (scale);
 	theObjectPlot.updateThroughput (scaled);
@@ -1,10 +1,11 @@
 package org.wiyn.etc.inputSpectra;
 
-import java.io.InputStream;
 import java.net.URL;
 
 import za.ac.salt.pipt.common.GridResource;
+import za.ac.salt.pipt.common.GridSnapshot;
 import za.ac.salt.pipt.common.GridSpectrum;
+import za.ac.salt.pipt.common.Interpolation;
 
 
 /** This class provides an air glow spectrum. */
@@ -61,30 +62,27 @@ public class AirGlowSpectrum extends GridSpectrum
 	1.108
     };
 	
-    /** Cache a copy for speed. */	
-    private static AirGlowSpectrum ags = null;
+    /** Cache a snapshot for speed; it is shared by all instances. */	
+    private static GridSnapshot ags = null;
 	
 
     /** Creates the air glow spectrum from the standard file. */
     public AirGlowSpectrum()
     {
-	// Create the grid (without the correct values yet). */
-	reset(DEFAULT_LB_STARTING_VALUE, DEFAULT_LB_RESOLUTION, DEFAULT_LB_RANGE);
-
-	if (AirGlowSpectrum.ags == null) {
+	GridSnapshot snapshot = AirGlowSpectrum.ags;
+	if (snapshot == null) {
+	    // Create the grid (without the correct values yet). */
+	    reset(DEFAULT_LB_STARTING_VALUE, DEFAULT_LB_RESOLUTION, DEFAULT_LB_RANGE);
 	    GridResource gr = new GridResource(host, rss_path);
-	    InputStream inputStream = gr.getInputStream();
-	    if (inputStream != null) {
-		this.read(inputStream);
-		// cache it
-		AirGlowSpectrum.ags = (AirGlowSpectrum)(new AirGlowSpectrum(this));
+	    if (gr.read(this)) {
+		// cache it (the values are only copied if they are changed)
+		AirGlowSpectrum.ags = new GridSnapshot(this);
 	    }
 	} else {
-	    for (int i = 0; i < ags.n(); i++) {
-		this.y[i] = ags.y[i];
-	    }
+	    this.reset(snapshot);
 	}
 	this.setDiffuse(true);	// AirGlow spectrum is diffuse emission
+	this.setInterpolationKernel(Interpolation.LINEAR); // avoid ringing around the lines
     }
 	
 
@@ -94,7 +92,7 @@ public class AirGlowSpectrum extends GridSpectrum
     {
 	this.reset(airGlowSpectrum.j(), airGlowSpectrum.k(), airGlowSpectrum.m());
 	for (int i = 0; i < airGlowSpectrum.n(); i++) {
-	    this.y[i] = airGlowSpectrum.y[i];
+	    this.y[i] = airGlowSpectrum.y(i);
 	}
     }
 
@@ -105,6 +103,7 @@ public class AirGlowSpectrum extends GridSpectrum
     {
 	super(url);
 	this.setDiffuse(true); // AirGlow spectrum is diffuse emission
+	this.setInterpolationKernel(Interpolation.LINEAR); // avoid ringing around the lines
     }
 
 
@@ -116,10 +115,7 @@ public class AirGlowSpectrum extends GridSpectrum
 
 	// read in the UVES air glow data
 	GridResource gr = new GridResource(host, uves_path);
-	InputStream inputStream = gr.getInputStream();
-	if (inputStream != null) {
-	    this.read(inputStream);
-	}
+	gr.read(this);
 
 	// now perform the calculations specified in the SALT spec. gen. doc.
 
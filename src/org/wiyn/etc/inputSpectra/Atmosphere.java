@@ -42,13 +42,15 @@ public class Atmosphere extends Filter implements SpectrumOperator {
      */
     public void apply (GenericSpectrum spectrum, double airmass) {
 	// apply the extinction curve point by point
+	spectrum.useFullArray ();
 	for (int i = 0; i < spectrum.n (); i++) {
 	    // double x = s.x(i);
 	    // double m = this.interp(x);
-	    double m = this.y[i];
+	    double m = this.y (i);
 	    double e = Math.pow (10, -0.4 * m * airmass);
 	    spectrum.y[i] *= e;
 	}
+	spectrum.ensureUpdate ();
     }
 
     /**
@@ -63,15 +65,17 @@ public class Atmosphere extends Filter implements SpectrumOperator {
      */
     public void apply (GenericSpectrum spectrum, Grid airmasses) {
 	// apply the extinction curve point by point
+	spectrum.useFullArray ();
 	for (int i = 0; i < spectrum.n (); i++) {
 	    // double x = s.x(i); // the current wavelength
 	    // double m = this.interp(x);
-	    double m = this.y[i];
+	    double m = this.y (i);
 	    // double airmass = g.interp(x);
-	    double airmass = airmasses.y[i];
+	    double airmass = airmasses.y (i);
 	    double e = Math.pow (10, -0.4 * m * airmass);
 	    spectrum.y[i] *= e;
 	}
+	spectrum.ensureUpdate ();
     }
 
     /**
@@ -84,13 +88,15 @@ public class Atmosphere extends Filter implements SpectrumOperator {
      */
     public void remove (GenericSpectrum spectrum, double airmass) {
 	// apply the extinction curve point by point
+	spectrum.useFullArray ();
 	for (int i = 0; i < spectrum.n (); i++) {
 	    // double x = s.x(i);
 	    // double m = this.interp(x);
-	    double m = this.y[i];
+	    double m = this.y (i);
 	    double e = Math.pow (10, -0.4 * m * airmass);
 	    spectrum.y[i] /= e;
 	}
+	spectrum.ensureUpdate ();
     }
 
     /**
@@ -104,14 +110,16 @@ public class Atmosphere extends Filter implements SpectrumOperator {
      */
     public void remove (GenericSpectrum spectrum, Grid airmasses) {
 	// apply the extinction curve point by point
+	spectrum.useFullArray ();
 	for (int i = 0; i < spectrum.n (); i++) {
 	    // double x = spectrum.x(i); // the current wavelength
 	    // double m = this.interp(x);
-	    double m = this.y[i];
+	    double m = this.y (i);
 	    // double airmass = g.interp(x);
-	    double airmass = airmasses.y[i];
+	    double airmass = airmasses.y (i);
 	    double e = Math.pow (10, -0.4 * m * airmass);
 	    spectrum.y[i] /= e;
 	}
+	spectrum.ensureUpdate ();
     }
 }
@@ -2,7 +2,9 @@ package org.wiyn.etc.inputSpectra;
 
 import za.ac.salt.pipt.common.Filter;
 import za.ac.salt.pipt.common.GenericSpectrum;
+import za.ac.salt.pipt.common.Grid;
 import za.ac.salt.pipt.common.GridSpectrum;
+import za.ac.salt.pipt.common.SparseFilter;
 import za.ac.salt.pipt.common.dataExchange.InvalidValueException;
 
 /**
@@ -45,6 +47,29 @@ public class FluxNormalization {
 	return 0;
     }
 
+    /**
+     * Multiplies the given non-normalized fluxes of the given spectrum by its
+     * normalization factor. Normalized spectra based on a grid let their
+     * superclass evaluate the fluxes at many wavelengths at once (see
+     * GenericSpectrum.evaluate(double[], double[])) and normalize the result
+     * with this method.
+     * 
+     * @param spectrum
+     *            the spectrum
+     * @param fluxes
+     *            the non-normalized fluxes, which are replaced by the
+     *            normalized ones
+     * @param n
+     *            the number of fluxes
+     */
+    public static void normalize (NormalizedSpectrum spectrum,
+	    double[] fluxes, int n) {
+	double normalizationFactor = spectrum.getNormalizationFactor ();
+	for (int i = 0; i < n; i++) {
+	    fluxes[i] *= normalizationFactor;
+	}
+    }
+
     /**
      * Returns the normalization factor for the given spectrum and V magnitude.
      * 
@@ -117,7 +142,16 @@ public class FluxNormalization {
 
 	double retVal = 0;
 
-	Filter f = new Filter (cw - width / 2, cw + width / 2);
+	// Use the index of cumulative sums if the fluxes are given on the grid
+	// of the box filter.
+	GridSpectrum grid = input.getFluxGrid ();
+	if (grid != null && grid.j () == Grid.DEFAULT_LB_STARTING_VALUE
+		&& grid.k () == Grid.DEFAULT_LB_RESOLUTION
+		&& grid.m () == Grid.DEFAULT_LB_RANGE && input.k () == grid.k ()) {
+	    return grid.integrate (cw - width / 2, cw + width / 2) / width;
+	}
+
+	Filter f = new SparseFilter (cw - width / 2, cw + width / 2);
 
 	retVal = Integrate (input, f) / width;
 
@@ -127,18 +161,21 @@ public class FluxNormalization {
     public static double Integrate (GenericSpectrum spectrum, Filter f) {
 	double retVal = 0;
 	// System.err.println (spectrum.n() + "  " + f.n ());
+	// the filter vanishes outside its support window
+	int start = f.supportStart ();
+	int end = f.supportEnd ();
 	if (spectrum instanceof NormalizedSpectrum) {
 	    System.err.println ("Normalized");
-	    for (int ii = 0; ii < f.n (); ii++)
+	    for (int ii = start; ii < end; ii++)
 
-		retVal += f.y[ii]
+		retVal += f.y (ii)
 			* ((NormalizedSpectrum) spectrum).nonNormalizedFlux (f
 				.x (ii));
 
 	} else {
-	    for (int ii = 0; ii < f.n (); ii++)
+	    for (int ii = start; ii < end; ii++)
 
-		retVal += f.y[ii] * spectrum.flux (f.x (ii));
+		retVal += f.y (ii) * spectrum.flux (f.x (ii));
 
 	}
 	return retVal * spectrum.dx ();
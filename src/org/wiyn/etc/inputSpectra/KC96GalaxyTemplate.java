@@ -1,16 +1,33 @@
 package org.wiyn.etc.inputSpectra;
 
-import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
 import za.ac.salt.pipt.common.GenericSpectrum;
 import za.ac.salt.pipt.common.GridResource;
 import za.ac.salt.pipt.common.GridSpectrum;
+import za.ac.salt.pipt.common.LogGrid;
 
 public class KC96GalaxyTemplate extends GenericSpectrum {
 
     private GridSpectrum galaxySpectrum;
+
+    /** the rest-frame spectrum, which is never modified */
+    private GridSpectrum restFrame;
+
+    /**
+     * the rest-frame template, sampled uniformly in ln(wavelength); it is
+     * only created once a non-zero redshift is requested (see LogGrid for its
+     * memory requirements)
+     */
+    private LogGrid template;
+
+    /** the grid into which the redshifted template is written */
+    private GridSpectrum redshifted;
+
+    /** the galaxy type of the rest-frame spectrum */
+    private String templateType;
     private String galaxyType = TemplateIndex.keys ().nextElement ();
     private double redshift = 0.0;
 
@@ -72,16 +89,37 @@ public class KC96GalaxyTemplate extends GenericSpectrum {
 
     }
 
+    /**
+     * Sets the galaxy spectrum to the rest-frame spectrum redshifted by the
+     * given redshift. For a redshift of 0 the rest-frame spectrum itself is
+     * used. Otherwise the rest-frame template, which is uniform in
+     * ln(wavelength), is shifted, which neither changes the template nor
+     * allocates any memory once the template has been created.
+     * 
+     * @param redshift
+     *            the redshift
+     */
     public void redshift (double redshift) {
-
-	int n = this.galaxySpectrum.n ();
-	for (int ii = n - 1; ii > 0; ii--) {
-	    double wavelength = this.galaxySpectrum.x (ii);
-	    wavelength = wavelength / (1 + redshift);
-	    this.galaxySpectrum.y[ii] = this.galaxySpectrum.interp (wavelength);
+	if (this.restFrame == null) {
+	    return;
 	}
-	this.galaxySpectrum.y[0] = 0;
-
+	if (redshift == 0) {
+	    this.galaxySpectrum = this.restFrame;
+	    return;
+	}
+	if (this.template == null) {
+	    this.template = new LogGrid (this.restFrame);
+	}
+	if (this.redshifted == null
+		|| this.redshifted.j () != this.restFrame.j ()
+		|| this.redshifted.k () != this.restFrame.k ()
+		|| this.redshifted.m () != this.restFrame.m ()) {
+	    this.redshifted = new GridSpectrum ();
+	    this.redshifted.reset (this.restFrame.j (), this.restFrame.k (),
+		    this.restFrame.m ());
+	}
+	this.template.redshift (redshift, this.redshifted);
+	this.galaxySpectrum = this.redshifted;
     }
 
     public double getRedshift () {
@@ -105,6 +143,21 @@ public class KC96GalaxyTemplate extends GenericSpectrum {
 	    return 0;
     }
 
+    public void evaluate (double[] wavelengths, double[] fluxes) {
+	if (this.isUpdateNeeded ())
+	    update ();
+	if (this.galaxySpectrum != null)
+	    this.galaxySpectrum.interp (wavelengths, fluxes);
+	else
+	    Arrays.fill (fluxes, 0, wavelengths.length, 0);
+    }
+
+    public GridSpectrum getFluxGrid () {
+	if (this.isUpdateNeeded ())
+	    update ();
+	return this.galaxySpectrum;
+    }
+
     public String name () {
 
 	return "KC96 Galaxy Template";
@@ -122,20 +175,23 @@ public class KC96GalaxyTemplate extends GenericSpectrum {
 	    System.err.println ("Could not find file for key: " + galaxyType);
 	    return;
 	}
-	GridResource gr = new GridResource ("http://www.wiyn.org/",
-		ResourcePath + resource)
-
-	;
-
-	InputStream inputStream = null;
-	if (gr != null) {
-	    inputStream = gr.getInputStream ();
-	    galaxySpectrum = new GridSpectrum ();
-	    galaxySpectrum.read (inputStream);
+	// the rest-frame spectrum only has to be read if the galaxy type has
+	// changed
+	if (restFrame == null || !galaxyType.equals (templateType)) {
+	    GridResource gr = new GridResource ("http://www.wiyn.org/",
+		    ResourcePath + resource)
+
+	    ;
+
+	    GridSpectrum spectrum = new GridSpectrum ();
+	    if (gr.read (spectrum)) {
+		restFrame = spectrum;
+		template = null;
+		templateType = galaxyType;
+	    }
 	}
 
-	if (this.redshift != 0)
-	    this.redshift (redshift);
+	this.redshift (redshift);
 	this.setUpdateNeeded (false);
     }
 
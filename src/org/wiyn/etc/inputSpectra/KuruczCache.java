@@ -0,0 +1,230 @@
+package org.wiyn.etc.inputSpectra;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import za.ac.salt.pipt.common.GridSnapshot;
+import za.ac.salt.pipt.common.GridSpectrum;
+
+/**
+ * A process-wide cache of the resampled spectra of Kurucz models, keyed by the
+ * library model (see KuruczLibrary.nearest()) which the requested temperature,
+ * gravity and metallicity are snapped to. The spectra are kept as grid
+ * snapshots, which are immutable and are shared by all the Kurucz models
+ * using them, so that requesting the same stellar type again requires neither
+ * I/O nor resampling.
+ * <p>
+ * The cache holds the most recently used spectra up to a memory budget, which
+ * can be changed by means of setMemoryBudget(). The numbers of hits, misses
+ * and evictions are recorded. All methods are thread-safe. If two threads
+ * request the same uncached model at the same time, both load it, and the
+ * second one replaces the first in the cache.
+ */
+public class KuruczCache {
+    /** the default memory budget (in bytes) */
+    public static final long DEFAULT_MEMORY_BUDGET = 16L << 20;
+
+    /** the cached spectra, in the order of their use (least recent first) */
+    private static final Map<KuruczLibrary.Model, GridSnapshot> spectra = new LinkedHashMap<KuruczLibrary.Model, GridSnapshot> (
+	    16, 0.75f, true);
+
+    /** the memory budget (in bytes) */
+    private static long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    /** the memory used by the cached spectra (in bytes) */
+    private static long memoryUsage = 0;
+
+    /** the number of requests answered from the cache */
+    private static long hits = 0;
+
+    /** the number of requests for which the spectrum had to be loaded */
+    private static long misses = 0;
+
+    /** the number of spectra removed to keep within the memory budget */
+    private static long evictions = 0;
+
+    /** There are no instances of this class. */
+    private KuruczCache() {
+    }
+
+    /**
+     * Returns the resampled spectrum of the given model. It is taken from the
+     * cache if possible; otherwise it is read from the library, resampled
+     * onto the default grid and cached. If the spectrum cannot be read, null
+     * is returned.
+     *
+     * @param model
+     *            the library model
+     * @return the snapshot of the resampled spectrum, or null
+     */
+    public static GridSnapshot getSpectrum (KuruczLibrary.Model model) {
+	synchronized (spectra) {
+	    GridSnapshot snapshot = spectra.get (model);
+	    if (snapshot != null) {
+		hits++;
+		return snapshot;
+	    }
+	    misses++;
+	}
+
+	// read in the data (outside the lock, as this is slow)
+	int n = KuruczLibrary.POINTS; // values per spectrum
+	double x[] = new double[n];
+	double y[] = new double[n];
+	if (!KuruczLibrary.read (model, x, y)) {
+	    return null;
+	}
+	GridSpectrum grid = new GridSpectrum ();
+	grid.resample (x, y, n);
+	GridSnapshot snapshot = new GridSnapshot (grid);
+
+	synchronized (spectra) {
+	    GridSnapshot replaced = spectra.put (model, snapshot);
+	    if (replaced != null) {
+		memoryUsage -= memory (replaced);
+	    }
+	    memoryUsage += memory (snapshot);
+	    trim ();
+	}
+	return snapshot;
+    }
+
+    /**
+     * Sets the memory budget, i.e. the maximum memory (in bytes) used by the
+     * cached spectra. The least recently used spectra are removed if
+     * necessary. A budget of 0 disables the cache.
+     *
+     * @param bytes
+     *            the memory budget (in bytes)
+     */
+    public static void setMemoryBudget (long bytes) {
+	synchronized (spectra) {
+	    memoryBudget = Math.max (bytes, 0);
+	    trim ();
+	}
+    }
+
+    /**
+     * Returns the memory budget, i.e. the maximum memory (in bytes) used by
+     * the cached spectra.
+     *
+     * @return the memory budget (in bytes)
+     */
+    public static long getMemoryBudget () {
+	synchronized (spectra) {
+	    return memoryBudget;
+	}
+    }
+
+    /**
+     * Returns the memory (in bytes) used by the cached spectra.
+     *
+     * @return the memory used by the cached spectra
+     */
+    public static long getMemoryUsage () {
+	synchronized (spectra) {
+	    return memoryUsage;
+	}
+    }
+
+    /**
+     * Returns the number of cached spectra.
+     *
+     * @return the number of cached spectra
+     */
+    public static int size () {
+	synchronized (spectra) {
+	    return spectra.size ();
+	}
+    }
+
+    /**
+     * Returns the number of requests which have been answered from the cache.
+     *
+     * @return the number of hits
+     */
+    public static long getHits () {
+	synchronized (spectra) {
+	    return hits;
+	}
+    }
+
+    /**
+     * Returns the number of requests for which the spectrum had to be loaded.
+     *
+     * @return the number of misses
+     */
+    public static long getMisses () {
+	synchronized (spectra) {
+	    return misses;
+	}
+    }
+
+    /**
+     * Returns the number of spectra which have been removed from the cache to
+     * keep within the memory budget.
+     *
+     * @return the number of evictions
+     */
+    public static long getEvictions () {
+	synchronized (spectra) {
+	    return evictions;
+	}
+    }
+
+    /** Sets the numbers of hits, misses and evictions to 0. */
+    public static void resetStatistics () {
+	synchronized (spectra) {
+	    hits = 0;
+	    misses = 0;
+	    evictions = 0;
+	}
+    }
+
+    /** Removes all spectra from the cache. */
+    public static void clear () {
+	synchronized (spectra) {
+	    spectra.clear ();
+	    memoryUsage = 0;
+	}
+    }
+
+    /**
+     * Returns a summary of the cache statistics.
+     *
+     * @return a summary of the cache statistics
+     */
+    public static String statistics () {
+	synchronized (spectra) {
+	    return "Kurucz cache: " + hits + " hits, " + misses + " misses, "
+		    + evictions + " evictions, " + spectra.size ()
+		    + " spectra using " + memoryUsage + " of " + memoryBudget
+		    + " bytes";
+	}
+    }
+
+    /**
+     * Removes the least recently used spectra until the memory usage is
+     * within the budget. The caller must hold the lock on the cache.
+     */
+    private static void trim () {
+	Iterator<GridSnapshot> iterator = spectra.values ().iterator ();
+	while (memoryUsage > memoryBudget && iterator.hasNext ()) {
+	    memoryUsage -= memory (iterator.next ());
+	    iterator.remove ();
+	    evictions++;
+	}
+    }
+
+    /**
+     * Returns the memory (in bytes) used by the values of the given snapshot.
+     *
+     * @param snapshot
+     *            the snapshot
+     * @return the memory used by the snapshot
+     */
+    private static long memory (GridSnapshot snapshot) {
+	return 8L * snapshot.n ();
+    }
+}
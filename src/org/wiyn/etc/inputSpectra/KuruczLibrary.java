@@ -0,0 +1,780 @@
+package org.wiyn.etc.inputSpectra;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import za.ac.salt.pipt.common.GridResource;
+
+/**
+ * The library of Kurucz atmosphere models, i.e. the summary of the available
+ * models and the model spectra for the various metallicities.
+ * <p>
+ * The summary is read once, into a table in which the model closest to some
+ * temperature, gravity and metallicity is looked up. The spectra are stored in
+ * gzipped text files, one per metallicity, which contain the models for all
+ * temperatures, with one column per gravity. Reaching a model near the end of
+ * such a file requires inflating and skipping several megabytes, so that the
+ * build precompiles each file into a block store (see main()). This has one
+ * separately compressed block with the binary values of each model, preceded
+ * by a table of the block offsets, so that a model is obtained by reading and
+ * inflating a single block. The block store records the length and the gzip
+ * trailer of the model file it has been written from. If there is no block
+ * store, or if it doesn't match the model file, the text file is scanned
+ * instead.
+ */
+public class KuruczLibrary {
+    /** the first int of a block store ("KUR2" in ASCII) */
+    public static final int BLOCKS_MAGIC = 0x4b555232;
+
+    /** the suffix of the block store of a model file */
+    public static final String BLOCKS_SUFFIX = ".blocks";
+
+    /** the number of wavelengths per model */
+    public static final int POINTS = 1221;
+
+    /** the number of header lines preceding each model in a model file */
+    private static final int HEADER_LINES = 3;
+
+    /** the length (in bytes) of the header of a block store */
+    private static final int BLOCKS_HEADER_LENGTH = 32;
+
+    /** the length (in bytes) of the trailer of a gzipped file */
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    /** a host where to look for the library files */
+    private final static String website = "http://www.wiyn.org/";
+
+    /** the summary of the available models */
+    private final static String summary = "/resources/rss_pipt-data/kurucz.summary.txt";
+
+    /** the model file for a logarithmic metallicity of 0 */
+    private final static String kp00file = "/resources/rss_pipt-data/kurucz_kp00.txt.gz";
+
+    /** the model file for a logarithmic metallicity of -1 */
+    private final static String km10file = "/resources/rss_pipt-data/kurucz_km10.txt.gz";
+
+    /** the model file for a logarithmic metallicity of -2 */
+    private final static String km20file = "/resources/rss_pipt-data/kurucz_km20.txt.gz";
+
+    /** the models listed in the summary, or null if it hasn't been read yet */
+    private static Model[] models = null;
+
+    /**
+     * whether the block stores of the model files match the model files, by
+     * path of the model file; a block store is checked the first time it is
+     * used only
+     */
+    private static final Map<String, Boolean> upToDate = new HashMap<String, Boolean> ();
+
+    /** There are no instances of this class. */
+    private KuruczLibrary() {
+    }
+
+    /**
+     * A model listed in the summary, i.e. a temperature, gravity and
+     * metallicity, together with the position of the model in the model file
+     * for the metallicity.
+     */
+    public static class Model {
+	/** the number of the model within the model file */
+	private final int fileno;
+
+	/** the temperature (in Kelvin) */
+	private final double temperature;
+
+	/** the logarithm of the gravity */
+	private final double logGravity;
+
+	/** the logarithm of the metallicity */
+	private final int logMetallicity;
+
+	/**
+	 * Creates the model with the given parameters.
+	 *
+	 * @param fileno
+	 *            the number of the model within the model file
+	 * @param temperature
+	 *            the temperature (in Kelvin)
+	 * @param logGravity
+	 *            the logarithm of the gravity
+	 * @param logMetallicity
+	 *            the logarithm of the metallicity
+	 */
+	Model(int fileno, double temperature, double logGravity,
+		int logMetallicity) {
+	    this.fileno = fileno;
+	    this.temperature = temperature;
+	    this.logGravity = logGravity;
+	    this.logMetallicity = logMetallicity;
+	}
+
+	/**
+	 * Returns the number of the model within the model file.
+	 *
+	 * @return the number of the model within the model file
+	 */
+	public int getFileno () {
+	    return fileno;
+	}
+
+	/**
+	 * Returns the temperature.
+	 *
+	 * @return the temperature (in Kelvin)
+	 */
+	public double getTemperature () {
+	    return temperature;
+	}
+
+	/**
+	 * Returns the logarithm of the gravity.
+	 *
+	 * @return the logarithm of the gravity
+	 */
+	public double getLogGravity () {
+	    return logGravity;
+	}
+
+	/**
+	 * Returns the logarithm of the metallicity.
+	 *
+	 * @return the logarithm of the metallicity
+	 */
+	public int getLogMetallicity () {
+	    return logMetallicity;
+	}
+
+	/**
+	 * Returns the column of the model file containing the spectrum for the
+	 * gravity of this model, not counting the wavelength column.
+	 *
+	 * @return the column of the spectrum
+	 */
+	public int getColumn () {
+	    return (int) (logGravity / 0.5); // ouch!
+	}
+
+	/**
+	 * Returns the hash code, which is based on the parameters of the model.
+	 *
+	 * @return the hash code
+	 */
+	public int hashCode () {
+	    int h = fileno;
+	    h = 31 * h + Double.valueOf (temperature).hashCode ();
+	    h = 31 * h + Double.valueOf (logGravity).hashCode ();
+	    h = 31 * h + logMetallicity;
+	    return h;
+	}
+
+	/**
+	 * States whether the given object is a model with the same parameters.
+	 *
+	 * @param o
+	 *            the object
+	 * @return true if the object is a model with the same parameters
+	 */
+	public boolean equals (Object o) {
+	    if (!(o instanceof Model)) {
+		return false;
+	    }
+	    Model model = (Model) o;
+	    return fileno == model.fileno
+		    && Double.compare (temperature, model.temperature) == 0
+		    && Double.compare (logGravity, model.logGravity) == 0
+		    && logMetallicity == model.logMetallicity;
+	}
+    }
+
+    /**
+     * Returns the model closest to the given temperature, gravity and
+     * metallicity, as measured by the metric of the Kurucz model space. If
+     * several models are equally close, the first one in the summary is
+     * returned. If the summary cannot be read, null is returned.
+     *
+     * @param temperature
+     *            the temperature (in Kelvin)
+     * @param logGravity
+     *            the logarithm of the gravity
+     * @param logMetallicity
+     *            the logarithm of the metallicity
+     * @return the closest model, or null
+     */
+    public static Model nearest (double temperature, double logGravity,
+	    double logMetallicity) {
+	Model[] models = getModels ();
+	Model nearest = null;
+	double best = Double.MAX_VALUE; // best metric so far
+	for (int i = 0; i < models.length; i++) {
+	    double d = metric (temperature, logGravity, logMetallicity,
+		    models[i].temperature, models[i].logGravity,
+		    models[i].logMetallicity);
+	    if (d < best) {
+		nearest = models[i];
+		best = d;
+	    }
+	}
+	return nearest;
+    }
+
+    /**
+     * Returns the distance as given by the metric of the Kurucz model space.
+     *
+     * @param temperature
+     *            the first temperature (in Kelvin)
+     * @param logGravity
+     *            the logarithm of the first gravity
+     * @param logMetallicity
+     *            the logarithm of the first metallicity
+     * @param temperature0
+     *            the second temperature (in Kelvin)
+     * @param logGravity0
+     *            the logarithm of the second gravity
+     * @param logMetallicity0
+     *            the logarithm of the second metallicity
+     * @return the distance between the two given points in Kurucz model space
+     */
+    private static double metric (double temperature, double logGravity,
+	    double logMetallicity, double temperature0, double logGravity0,
+	    double logMetallicity0) {
+	// these represent a unit step in each dimension
+	double Unit_temperature = 250.0;
+	double Unit_logGravity = 0.5;
+	double Unit_logMetallicity = 1.0;
+
+	double d = 0.0;
+	d += Math.pow (((temperature - temperature0) / Unit_temperature), 2.0);
+	d += Math.pow (((logGravity - logGravity0) / Unit_logGravity), 2.0);
+	d += Math
+		.pow (
+			((logMetallicity - logMetallicity0) / Unit_logMetallicity),
+			2.0);
+
+	return (d);
+    }
+
+    /**
+     * Returns the models listed in the summary, which is read the first time
+     * this method is called. If the summary cannot be read, an empty array is
+     * returned (and reading is tried again next time).
+     *
+     * @return the models listed in the summary
+     */
+    private static synchronized Model[] getModels () {
+	if (models != null) {
+	    return models;
+	}
+	GridResource gr = new GridResource (website, summary);
+	InputStream inputStream = gr.getInputStream ();
+	if (inputStream == null) {
+	    return new Model[0];
+	}
+	ArrayList<Model> list = new ArrayList<Model> ();
+	try {
+	    BufferedReader br = new BufferedReader (new InputStreamReader (
+		    inputStream));
+	    String s;
+	    while ((s = br.readLine ()) != null) {
+		StringTokenizer st = new StringTokenizer (s, " ");
+		st.nextToken ();
+		int fileno = Integer.parseInt (st.nextToken ());
+		st.nextToken ();
+		st.nextToken ();
+		double temperature = Double.parseDouble (st.nextToken ());
+		st.nextToken ();
+		st.nextToken ();
+		double logGravity = Double.parseDouble (st.nextToken ());
+		st.nextToken ();
+		st.nextToken ();
+		int logMetallicity = Integer.parseInt (st.nextToken ());
+		list.add (new Model (fileno, temperature, logGravity,
+			logMetallicity));
+	    }
+	    br.close ();
+	} catch (IOException e) {
+	    e.printStackTrace ();
+	}
+	models = list.toArray (new Model[list.size ()]);
+	return models;
+    }
+
+    /**
+     * Returns the path of the model file for the given logarithmic
+     * metallicity, or null if there is no such file.
+     *
+     * @param logMetallicity
+     *            the logarithm of the metallicity
+     * @return the path of the model file, or null
+     */
+    private static String modelFile (int logMetallicity) {
+	switch (logMetallicity) {
+	case 0:
+	    return kp00file;
+	case -1:
+	    return km10file;
+	case -2:
+	    return km20file;
+	}
+	return null;
+    }
+
+    /**
+     * Reads the spectrum of the given model into the given arrays, which must
+     * have a length of at least POINTS. The block store is used if there is
+     * one and it matches the model file (see isUpToDate()); otherwise the
+     * model file is scanned. False is returned if the spectrum couldn't be
+     * read.
+     *
+     * @param model
+     *            the model
+     * @param wavelengths
+     *            the array for the wavelengths
+     * @param fluxes
+     *            the array for the fluxes
+     * @return true if the spectrum has been read
+     */
+    public static boolean read (Model model, double[] wavelengths,
+	    double[] fluxes) {
+	String path = modelFile (model.logMetallicity);
+	if (path == null) {
+	    return false;
+	}
+	URL blocksURL = KuruczLibrary.class.getResource (path + BLOCKS_SUFFIX);
+	if (blocksURL != null && isUpToDate (path, blocksURL)) {
+	    try {
+		readBlock (blocksURL, model.fileno, model.getColumn (),
+			wavelengths, fluxes);
+		return true;
+	    } catch (IOException e) {
+		// fall back to the text version
+		System.err.println ("KuruczLibrary: " + e);
+	    }
+	}
+
+	InputStream inputStream = null;
+	try {
+	    inputStream = new GZIPInputStream (new GridResource (website, path)
+		    .getInputStream ());
+	} catch (Exception e) {
+	    System.err.println ("Error reading gzip spectrum file");
+	    return false;
+	}
+	try {
+	    BufferedReader br = new BufferedReader (new InputStreamReader (
+		    inputStream));
+
+	    // skip over unwanted spectra in this file
+	    for (int i = 0; i < (POINTS + HEADER_LINES) * model.fileno; i++) {
+		br.readLine ();
+	    }
+	    double[][] values = readModel (br);
+	    int col = model.getColumn ();
+	    for (int i = 0; i < POINTS; i++) {
+		wavelengths[i] = values[i][0];
+		fluxes[i] = values[i][col + 1];
+	    }
+	    br.close ();
+	    return true;
+	} catch (IOException e) {
+	    e.printStackTrace ();
+	    return false;
+	}
+    }
+
+    /**
+     * States whether the block store at the given URL has been written from
+     * the model file with the given path, i.e. whether the length and the gzip
+     * trailer of the model file recorded in the block store are still those
+     * of the model file. The result is remembered, so that the model file is
+     * only looked at the first time. A block store whose model file cannot be
+     * found is not used.
+     *
+     * @param path
+     *            the path of the model file
+     * @param blocksURL
+     *            the URL of the block store
+     * @return true if the block store matches the model file
+     */
+    private static synchronized boolean isUpToDate (String path,
+	    URL blocksURL) {
+	Boolean matches = upToDate.get (path);
+	if (matches == null) {
+	    matches = Boolean.FALSE;
+	    URL sourceURL = KuruczLibrary.class.getResource (path);
+	    if (sourceURL != null) {
+		try {
+		    DataInputStream dis = new DataInputStream (blocksURL
+			    .openStream ());
+		    long[] recorded = new long[2];
+		    try {
+			dis.skipBytes (16); // magic, blocks, points and columns
+			recorded[0] = dis.readLong ();
+			recorded[1] = dis.readLong ();
+		    } finally {
+			dis.close ();
+		    }
+		    matches = Boolean.valueOf (Arrays.equals (recorded,
+			    signature (sourceURL)));
+		} catch (IOException e) {
+		    System.err.println ("KuruczLibrary: " + e);
+		}
+	    }
+	    if (!matches.booleanValue ()) {
+		System.err.println ("KuruczLibrary: The block store of " + path
+			+ " is out of date with respect to its model file.");
+	    }
+	    upToDate.put (path, matches);
+	}
+	return matches.booleanValue ();
+    }
+
+    /**
+     * Returns the length of the given gzipped model file and its gzip trailer,
+     * i.e. its last 8 bytes (the CRC-32 and the length of the uncompressed
+     * text) read as a big-endian long. If the URL refers to a file, only the
+     * trailer is read; otherwise the whole stream is.
+     *
+     * @param url
+     *            the URL of the model file
+     * @return the length and the trailer
+     * @throws IOException
+     *             if the model file cannot be read or is too short
+     */
+    private static long[] signature (URL url) throws IOException {
+	long length = 0;
+	byte[] trailer = new byte[GZIP_TRAILER_LENGTH];
+	if ("file".equals (url.getProtocol ())) {
+	    RandomAccessFile raf;
+	    try {
+		raf = new RandomAccessFile (new File (url.toURI ()), "r");
+	    } catch (URISyntaxException e) {
+		throw new IOException (e.toString ());
+	    }
+	    try {
+		length = raf.length ();
+		if (length < GZIP_TRAILER_LENGTH) {
+		    throw new EOFException ("Truncated Kurucz model file");
+		}
+		raf.seek (length - GZIP_TRAILER_LENGTH);
+		raf.readFully (trailer);
+	    } finally {
+		raf.close ();
+	    }
+	} else {
+	    InputStream inputStream = url.openStream ();
+	    try {
+		byte[] chunk = new byte[65536];
+		int read;
+		while ((read = inputStream.read (chunk)) > 0) {
+		    // keep the last bytes read
+		    int kept = Math.max (GZIP_TRAILER_LENGTH - read, 0);
+		    System.arraycopy (trailer, GZIP_TRAILER_LENGTH - kept,
+			    trailer, 0, kept);
+		    System.arraycopy (chunk, read - (GZIP_TRAILER_LENGTH - kept),
+			    trailer, kept, GZIP_TRAILER_LENGTH - kept);
+		    length += read;
+		}
+	    } finally {
+		inputStream.close ();
+	    }
+	    if (length < GZIP_TRAILER_LENGTH) {
+		throw new EOFException ("Truncated Kurucz model file");
+	    }
+	}
+	return new long[] { length,
+		new DataInputStream (new ByteArrayInputStream (trailer))
+			.readLong () };
+    }
+
+    /**
+     * Reads the given model and column from the block store at the given URL.
+     * If the URL refers to a file, only the header, the offsets of the block
+     * and the block itself are read; otherwise the stream is skipped up to the
+     * block.
+     *
+     * @param url
+     *            the URL of the block store
+     * @param fileno
+     *            the number of the model within the model file
+     * @param col
+     *            the column of the spectrum, not counting the wavelength
+     *            column
+     * @param wavelengths
+     *            the array for the wavelengths
+     * @param fluxes
+     *            the array for the fluxes
+     * @throws IOException
+     *             if the block store cannot be read or is invalid
+     */
+    private static void readBlock (URL url, int fileno, int col,
+	    double[] wavelengths, double[] fluxes) throws IOException {
+	byte[] block;
+	int columns;
+	if ("file".equals (url.getProtocol ())) {
+	    RandomAccessFile raf;
+	    try {
+		raf = new RandomAccessFile (new File (url.toURI ()), "r");
+	    } catch (URISyntaxException e) {
+		throw new IOException (e.toString ());
+	    }
+	    try {
+		columns = checkHeader (raf.readInt (), raf.readInt (), raf
+			.readInt (), raf.readInt (), fileno, col);
+		raf.seek (BLOCKS_HEADER_LENGTH + 8L * fileno);
+		long start = raf.readLong ();
+		long end = raf.readLong ();
+		block = new byte[(int) (end - start)];
+		raf.seek (start);
+		raf.readFully (block);
+	    } finally {
+		raf.close ();
+	    }
+	} else {
+	    DataInputStream dis = new DataInputStream (new BufferedInputStream (
+		    url.openStream ()));
+	    try {
+		columns = checkHeader (dis.readInt (), dis.readInt (), dis
+			.readInt (), dis.readInt (), fileno, col);
+		dis.readLong (); // the length of the model file
+		dis.readLong (); // the gzip trailer of the model file
+		dis.skipBytes (8 * fileno);
+		long start = dis.readLong ();
+		long end = dis.readLong ();
+		long position = BLOCKS_HEADER_LENGTH + 8L * (fileno + 2);
+		while (position < start) {
+		    long skipped = dis.skip (start - position);
+		    if (skipped <= 0) {
+			throw new EOFException ("Truncated Kurucz block store");
+		    }
+		    position += skipped;
+		}
+		block = new byte[(int) (end - start)];
+		dis.readFully (block);
+	    } finally {
+		dis.close ();
+	    }
+	}
+
+	DataInputStream values = new DataInputStream (new InflaterInputStream (
+		new ByteArrayInputStream (block)));
+	for (int i = 0; i < POINTS; i++) {
+	    for (int j = 0; j < columns; j++) {
+		double value = values.readDouble ();
+		if (j == 0) {
+		    wavelengths[i] = value;
+		} else if (j == col + 1) {
+		    fluxes[i] = value;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Checks the header of a block store and returns the number of columns
+     * per model (including the wavelength column).
+     *
+     * @param magic
+     *            the first int of the header
+     * @param blocks
+     *            the number of blocks
+     * @param points
+     *            the number of wavelengths per model
+     * @param columns
+     *            the number of columns per model
+     * @param fileno
+     *            the number of the requested model
+     * @param col
+     *            the requested column, not counting the wavelength column
+     * @return the number of columns
+     * @throws IOException
+     *             if the header is invalid or doesn't include the requested
+     *             model and column
+     */
+    private static int checkHeader (int magic, int blocks, int points,
+	    int columns, int fileno, int col) throws IOException {
+	if (magic != BLOCKS_MAGIC || points != POINTS) {
+	    throw new IOException ("Invalid Kurucz block store");
+	}
+	if (fileno < 0 || fileno >= blocks || col < 0 || col + 1 >= columns) {
+	    throw new IOException ("No Kurucz model " + fileno + ", column "
+		    + col + " in the block store");
+	}
+	return columns;
+    }
+
+    /**
+     * Reads the next model (its header lines and the lines with its values)
+     * from the given model file reader and returns its values, indexed by
+     * wavelength and column. The first column contains the wavelength. If the
+     * end of the file is reached before the model, null is returned.
+     *
+     * @param br
+     *            the reader of the model file
+     * @return the values of the model, or null
+     * @throws IOException
+     *             if the file cannot be read or the model is incomplete
+     */
+    private static double[][] readModel (BufferedReader br) throws IOException {
+	for (int i = 0; i < HEADER_LINES; i++) {
+	    if (br.readLine () == null) {
+		// fits file id, column titles and dashed lines
+		return null;
+	    }
+	}
+	double[][] values = new double[POINTS][];
+	for (int i = 0; i < POINTS; i++) {
+	    String s = br.readLine ();
+	    if (s == null) {
+		throw new EOFException ("Incomplete Kurucz model");
+	    }
+	    StringTokenizer st = new StringTokenizer (s, " ");
+	    values[i] = new double[st.countTokens ()];
+	    for (int j = 0; j < values[i].length; j++) {
+		values[i][j] = Double.parseDouble (st.nextToken ());
+	    }
+	}
+	return values;
+    }
+
+    /**
+     * Precompiles the given model files into block stores. The first argument
+     * is the root directory, and all the other arguments are the paths of the
+     * (gzipped) model files relative to it. Each block store is written next
+     * to its model file, with the suffix BLOCKS_SUFFIX appended to its name.
+     * If a model file cannot be compiled, its block store is deleted, the
+     * remaining model files are still compiled, and the program exits with
+     * status 1. This method is run by the "resources" target of the Ant
+     * build.
+     *
+     * @param args
+     *            the root directory and the paths of the model files
+     */
+    public static void main (String[] args) {
+	if (args.length < 1) {
+	    System.err.println ("Usage: KuruczLibrary root [path ...]");
+	    System.exit (1);
+	}
+	File root = new File (args[0]);
+	int failed = 0;
+	for (int i = 1; i < args.length; i++) {
+	    File source = new File (root, args[i]);
+	    File destination = new File (source.getPath () + BLOCKS_SUFFIX);
+	    try {
+		int blocks = compile (source, destination);
+		System.out.println ("Precompiled " + blocks
+			+ " Kurucz models from " + args[i] + ".");
+	    } catch (IOException e) {
+		System.err.println ("Failed to compile " + args[i] + ": " + e);
+		destination.delete ();
+		failed++;
+	    } catch (NumberFormatException e) {
+		System.err.println ("Failed to compile " + args[i] + ": " + e);
+		destination.delete ();
+		failed++;
+	    }
+	}
+	if (failed > 0) {
+	    System.err.println (failed + " Kurucz model files failed.");
+	    System.exit (1);
+	}
+    }
+
+    /**
+     * Writes the block store for the given gzipped model file. The store
+     * consists of a header (BLOCKS_MAGIC, the number of blocks, POINTS and the
+     * number of columns per model, as big-endian ints, followed by the length
+     * and the gzip trailer of the model file, as big-endian longs), the
+     * offsets of the blocks and of the end of the file (as big-endian longs)
+     * and the blocks.
+     * Each block holds the values of a model row by row as big-endian doubles,
+     * compressed with a Deflater.
+     *
+     * @param source
+     *            the gzipped model file
+     * @param destination
+     *            the block store
+     * @return the number of blocks
+     * @throws IOException
+     *             if the model file cannot be read or the block store cannot
+     *             be written
+     */
+    public static int compile (File source, File destination)
+	    throws IOException {
+	// compress the blocks
+	ArrayList<byte[]> blocks = new ArrayList<byte[]> ();
+	int columns = 0;
+	BufferedReader br = new BufferedReader (new InputStreamReader (
+		new GZIPInputStream (new FileInputStream (source))));
+	try {
+	    double[][] values;
+	    while ((values = readModel (br)) != null) {
+		if (columns == 0) {
+		    columns = values[0].length;
+		}
+		ByteArrayOutputStream block = new ByteArrayOutputStream ();
+		DataOutputStream dos = new DataOutputStream (
+			new DeflaterOutputStream (block));
+		for (int i = 0; i < POINTS; i++) {
+		    if (values[i].length != columns) {
+			throw new IOException ("Inconsistent number of columns");
+		    }
+		    for (int j = 0; j < columns; j++) {
+			dos.writeDouble (values[i][j]);
+		    }
+		}
+		dos.close ();
+		blocks.add (block.toByteArray ());
+	    }
+	} finally {
+	    br.close ();
+	}
+
+	// write the header, the offsets and the blocks
+	DataOutputStream dos = new DataOutputStream (new BufferedOutputStream (
+		new FileOutputStream (destination)));
+	try {
+	    dos.writeInt (BLOCKS_MAGIC);
+	    dos.writeInt (blocks.size ());
+	    dos.writeInt (POINTS);
+	    dos.writeInt (columns);
+	    long[] signature = signature (source.toURI ().toURL ());
+	    dos.writeLong (signature[0]);
+	    dos.writeLong (signature[1]);
+	    long offset = BLOCKS_HEADER_LENGTH + 8L * (blocks.size () + 1);
+	    for (byte[] block : blocks) {
+		dos.writeLong (offset);
+		offset += block.length;
+	    }
+	    dos.writeLong (offset);
+	    for (byte[] block : blocks) {
+		dos.write (block);
+	    }
+	} finally {
+	    dos.close ();
+	}
+	return blocks.size ();
+    }
+}
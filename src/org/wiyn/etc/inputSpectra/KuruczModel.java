@@ -1,14 +1,7 @@
 package org.wiyn.etc.inputSpectra;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.StringTokenizer;
-import java.util.zip.GZIPInputStream;
-
 import za.ac.salt.pipt.common.GenericSpectrum;
-import za.ac.salt.pipt.common.GridResource;
+import za.ac.salt.pipt.common.GridSnapshot;
 import za.ac.salt.pipt.common.GridSpectrum;
 import za.ac.salt.pipt.common.dataExchange.InvalidValueException;
 
@@ -30,24 +23,6 @@ public class KuruczModel extends GenericSpectrum {
     /** the grid for the Kurucz model */
     private GridSpectrum modelGrid;
 
-    /** the Kurucz file number */
-    private int fileno = 10;
-
-    /** a datafile required for computing the Kurucz model */
-    private final static String website = "http://www.wiyn.org/";
-
-    /** a datafile required for computing the Kurucz model */
-    private final static String summary = "/resources/rss_pipt-data/kurucz.summary.txt";
-
-    /** a datafile required for computing the Kurucz model */
-    private final static String kp00file = "/resources/rss_pipt-data/kurucz_kp00.txt.gz";
-
-    /** a datafile required for computing the Kurucz model */
-    private final static String km10file = "/resources/rss_pipt-data/kurucz_km10.txt.gz";
-
-    /** a datafile required for computing the Kurucz model */
-    private final static String km20file = "/resources/rss_pipt-data/kurucz_km20.txt.gz";
-
     /**
      * Sets the internal variables to the given temperature, gravity and
      * metallicity values and states that an update is needed. The model isn't
@@ -76,49 +51,16 @@ public class KuruczModel extends GenericSpectrum {
 	setUpdateNeeded (true);
     }
 
-    /** Frees the memory of al the arrays. */
+    /**
+     * Frees the memory of al the arrays. The resampled spectrum remains in the
+     * KuruczCache (within its memory budget), so that it can be obtained again
+     * without reading it.
+     */
     public void freeMemory () {
 	super.freeMemory ();
 	modelGrid = null;
     }
 
-    /**
-     * Returns the distance as given by the metric of the Kurucz model space.
-     * 
-     * @param temperature
-     *            the first temperature (in Kelvin)
-     * @param logGravity
-     *            the logarithm of the first gravity
-     * @param logMetallicity
-     *            the logarithm of the first metallicity
-     * @param temperature0
-     *            the second temperature (in Kelvin)
-     * @param logGravity0
-     *            the logarithm of the second gravity
-     * @param logMetallicity0
-     *            the logarithm of the second metallicity
-     * @return the distance between the two given points in Kurucz model space
-     */
-
-    private static double metric (double temperature, double logGravity,
-	    double logMetallicity, double temperature0, double logGravity0,
-	    double logMetallicity0) {
-	// these represent a unit step in each dimension
-	double Unit_temperature = 250.0;
-	double Unit_logGravity = 0.5;
-	double Unit_logMetallicity = 1.0;
-
-	double d = 0.0;
-	d += Math.pow (((temperature - temperature0) / Unit_temperature), 2.0);
-	d += Math.pow (((logGravity - logGravity0) / Unit_logGravity), 2.0);
-	d += Math
-		.pow (
-			((logMetallicity - logMetallicity0) / Unit_logMetallicity),
-			2.0);
-
-	return (d);
-    }
-
     /**
      * Obtains the Kurucz model most closely representing the given temperature,
      * gravity and metallicity.
@@ -131,126 +73,23 @@ public class KuruczModel extends GenericSpectrum {
 	reset (DEFAULT_LB_STARTING_VALUE, DEFAULT_LB_RESOLUTION,
 		DEFAULT_LB_RANGE);
 
-	// As we will change the temperature, gravity and metallicity (assigning
-	// the best fit values), we need to store the original values.
-	double originalTemperature = temperature;
-	double originalLogGravity = logGravity;
-	double originalLogMetallicity = logMetallicity;
-
-	// examine the reference file
-	GridResource gr = new GridResource (website, summary);
-	InputStream inputStream = null;
-	if (gr != null) {
-	    inputStream = gr.getInputStream ();
+	// Look up the best fit model in the library (which reads the summary
+	// only once) and assign its temperature, gravity and metallicity.
+	KuruczLibrary.Model model = KuruczLibrary.nearest (temperature,
+		logGravity, logMetallicity);
+	if (model == null) {
+	    return;
 	}
-
-	if (inputStream != null) {
-	    // examine each line
-	    InputStreamReader isr = new InputStreamReader (inputStream);
-	    BufferedReader br = new BufferedReader (isr);
-	    boolean done = false;
-	    double best = Double.MAX_VALUE; // best metric so far
-	    while (!done) {
-		try {
-		    String s = br.readLine ();
-		    if (s == null) {
-			done = true;
-		    } else {
-			StringTokenizer st = new StringTokenizer (s, " ");
-			st.nextToken ();
-			int fileno = Integer.parseInt (st.nextToken ());
-			st.nextToken ();
-			st.nextToken ();
-			double bestFitTemperature = Double.parseDouble (st
-				.nextToken ());
-			st.nextToken ();
-			st.nextToken ();
-			double bestFitLogGravity = Double.parseDouble (st
-				.nextToken ());
-			st.nextToken ();
-			st.nextToken ();
-			int bestFitLogMetallicity = Integer.parseInt (st
-				.nextToken ());
-
-			// determine the metric
-			double d = KuruczModel.metric (originalTemperature,
-				originalLogGravity, originalLogMetallicity,
-				bestFitTemperature, bestFitLogGravity,
-				bestFitLogMetallicity);
-			if (d < best) {
-			    temperature = bestFitTemperature;
-			    logGravity = bestFitLogGravity;
-			    logMetallicity = bestFitLogMetallicity;
-			    this.fileno = fileno;
-			    best = d;
-			}
-		    }
-		} catch (IOException e) {
-		    e.printStackTrace ();
-		}
-
-	    }
-
-	    // we've read the summary file, and have the best match.
-	    // now open the file and read in the data.
-	    gr = null;
-	    switch ((int) this.logMetallicity) {
-	    case 0:
-		gr = new GridResource (website, kp00file);
-		break;
-	    case -1:
-		gr = new GridResource (website, km10file);
-		break;
-	    case -2:
-		gr = new GridResource (website, km20file);
-		break;
-	    }
-
-	    if (gr != null) {
-		try {
-		    inputStream = new GZIPInputStream (gr.getInputStream ());
-		} catch (Exception e) {
-		    // TODO Auto-generated catch block
-		    System.err.println ("Error reading gzip spectrum file");
-		}
-	    }
-	    if (inputStream != null) {
-		isr = new InputStreamReader (inputStream);
-		br = new BufferedReader (isr);
-
-		int n = 1221; // values per spectrum
-		double x[] = new double[n];
-		double y[] = new double[n];
-
-		// which column is the spectrum in?
-		int col = (int) (this.logGravity / 0.5); // ouch!
-
-		try {
-		    // skip over unwanted spectra in this file
-		    for (int i = 0; i < (n + 3) * fileno; i++) {
-			br.readLine ();
-		    }
-		    br.readLine (); // fits file id
-		    br.readLine (); // column titles
-		    br.readLine (); // dashed lines
-		    for (int i = 0; i < n; i++) {
-			String s = br.readLine ();
-			StringTokenizer st = new StringTokenizer (s, " ");
-			x[i] = Double.parseDouble (st.nextToken ());
-			// breeze through unwanted columns
-			for (int j = 0; j < col; j++) {
-			    st.nextToken ();
-			}
-			y[i] = Double.parseDouble (st.nextToken ());
-		    }
-
-		    // Set the model grid.
-		    modelGrid = new GridSpectrum ();
-		    modelGrid.resample (x, y, n);
-		} catch (IOException e) {
-		    e.printStackTrace ();
-		}
-	    }
+	temperature = model.getTemperature ();
+	logGravity = model.getLogGravity ();
+	logMetallicity = model.getLogMetallicity ();
+
+	// Obtain the resampled spectrum (usually from the cache) and set the
+	// model grid, which shares the cached values until it is changed.
+	GridSnapshot snapshot = KuruczCache.getSpectrum (model);
+	if (snapshot != null) {
+	    modelGrid = new GridSpectrum ();
+	    modelGrid.reset (snapshot);
 	}
     }
 
@@ -272,6 +111,38 @@ public class KuruczModel extends GenericSpectrum {
 	return modelGrid.interp (wavelength);
     }
 
+    /**
+     * Returns the fluxes at the given wavelengths, which are obtained by
+     * interpolating the model grid in a single pass for sorted wavelengths.
+     * If necessary, the model is updated first.
+     * 
+     * @param wavelengths
+     *            the wavelengths (in Angstrom)
+     * @param fluxes
+     *            the array into which the fluxes are written
+     */
+    public void evaluate (double[] wavelengths, double[] fluxes) {
+	// Check whether we have to update the model.
+	if (isUpdateNeeded ()) {
+	    update ();
+	}
+
+	modelGrid.interp (wavelengths, fluxes);
+    }
+
+    /**
+     * Returns the model grid, from which the fluxes are interpolated. If
+     * necessary, the model is updated first.
+     * 
+     * @return the model grid
+     */
+    public GridSpectrum getFluxGrid () {
+	if (isUpdateNeeded ()) {
+	    update ();
+	}
+	return modelGrid;
+    }
+
     /**
      * Sets the temperature to the given value and records the fact that the
      * model needs to be updated before the next flux is computed from it.
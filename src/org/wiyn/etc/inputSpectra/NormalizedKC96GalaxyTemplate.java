@@ -1,5 +1,7 @@
 package org.wiyn.etc.inputSpectra;
 
+import za.ac.salt.pipt.common.GridSpectrum;
+
 public class NormalizedKC96GalaxyTemplate extends KC96GalaxyTemplate implements
 	NormalizedSpectrum {
 
@@ -9,6 +11,9 @@ public class NormalizedKC96GalaxyTemplate extends KC96GalaxyTemplate implements
     private double normalizationFactor;
     private double referenceMag = 20;
 
+    /** the fingerprint of the flux grid used for the normalization factor */
+    private long normalizedFingerprint;
+
     public NormalizedKC96GalaxyTemplate() {
 	super ();
     }
@@ -49,14 +54,43 @@ public class NormalizedKC96GalaxyTemplate extends KC96GalaxyTemplate implements
     }
 
     public double flux (double wavelength) {
+	return getNormalizationFactor () * nonNormalizedFlux (wavelength);
+    }
+
+    /**
+     * Returns the normalized fluxes at the given wavelengths, which are
+     * obtained by interpolating the (redshifted) template and normalizing the result.
+     * 
+     * @param wavelengths
+     *            the wavelengths (in Angstrom)
+     * @param fluxes
+     *            the array into which the normalized fluxes are written
+     */
+    public void evaluate (double[] wavelengths, double[] fluxes) {
+	super.evaluate (wavelengths, fluxes);
+	FluxNormalization.normalize (this, fluxes, wavelengths.length);
+    }
 
-	if (this.referencemagChanged || magSystemChanged) {
+    /**
+     * Returns the normalization factor, which is computed again if the
+     * magnitude, the magnitude system or the (redshifted) template have
+     * changed since it was last computed. Changes of the template are noticed
+     * by means of the fingerprint of the flux grid.
+     * 
+     * @return the normalization factor
+     */
+    public double getNormalizationFactor () {
+	GridSpectrum fluxGrid = getFluxGrid ();
+	long fingerprint = fluxGrid != null ? fluxGrid.fingerprint () : 0;
+	if (this.referencemagChanged || magSystemChanged
+		|| fingerprint != normalizedFingerprint) {
 	    normalizationFactor = FluxNormalization.getNormalisationFactor (
 		    myMagSystem, this);
 	    magSystemChanged = false;
 	    referencemagChanged = false;
+	    normalizedFingerprint = fingerprint;
 	}
-	return normalizationFactor * nonNormalizedFlux (wavelength);
+	return normalizationFactor;
     }
 
     public void safeSetMagnitude (double magnitude) {
@@ -72,6 +72,32 @@ public class NormalizedKuruczModel extends KuruczModel implements
      * @return the normalized flux at the given wavelength
      */
     public double flux (double wavelength) {
+	// Normalize the flux and return the result.
+	return getNormalizationFactor () * nonNormalizedFlux (wavelength);
+    }
+
+    /**
+     * Returns the normalized fluxes at the given wavelengths, which are
+     * obtained by interpolating the Kurucz model and normalizing the result.
+     * 
+     * @param wavelengths
+     *            the wavelengths (in Angstrom)
+     * @param fluxes
+     *            the array into which the normalized fluxes are written
+     */
+    public void evaluate (double[] wavelengths, double[] fluxes) {
+	super.evaluate (wavelengths, fluxes);
+	FluxNormalization.normalize (this, fluxes, wavelengths.length);
+    }
+
+    /**
+     * Returns the normalization factor, which is computed again if the
+     * temperature, the gravity, the metallicity, the magnitude or the
+     * magnitude system have changed since it was last computed.
+     * 
+     * @return the normalization factor
+     */
+    public double getNormalizationFactor () {
 	// If the temperature, the gravity, the metallicity or the V magnitude
 	// have changed since the last call of this method, the normalization
 	// factor needs to be calculated again. Otherwise we may reuse the
@@ -92,8 +118,7 @@ public class NormalizedKuruczModel extends KuruczModel implements
 	previousLogMetallicity = logMetallicity;
 	previousVMagnitude = referenzMagnitude;
 	magSystemChanged = false;
-	// Normalize the flux and return the result.
-	return normalizationFactor * nonNormalizedFlux (wavelength);
+	return normalizationFactor;
     }
 
     /**
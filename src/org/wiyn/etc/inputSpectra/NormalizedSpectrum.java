@@ -41,6 +41,15 @@ public interface NormalizedSpectrum {
      */
     public double nonNormalizedFlux (double wavelength);
 
+    /**
+     * Returns the factor by which the non-normalized flux is multiplied. It is
+     * computed again if the spectrum or its normalization have changed since
+     * it was last computed.
+     * 
+     * @return the normalization factor
+     */
+    public double getNormalizationFactor ();
+
     /**
      * Sets the V magnitude used for the normalization.
      * 
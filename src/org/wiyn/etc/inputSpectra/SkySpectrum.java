@@ -59,7 +59,11 @@ public class SkySpectrum extends GridSpectrum {
 		this.setDiffuse(true); // Sky spectrum is diffuse emission
 	}
 
-	/** Creates the grid for the sky spectrum. */
+	/**
+	 * Creates the grid for the sky spectrum. The intermediate spectra free
+	 * their memory as soon as they aren't needed any longer, so that their
+	 * arrays are given back to the BufferPool and reused by the next ones.
+	 */
 	public void update() {
 		// Create the grid (without the correct values yet).
 		reset(DEFAULT_LB_STARTING_VALUE, DEFAULT_LB_RESOLUTION,
@@ -109,6 +113,7 @@ public class SkySpectrum extends GridSpectrum {
 		double g = (1 + Cs * Math.cos(f)) / (1 + Cs);
 		ags.scale(g);
 		this.add(ags);
+		ags.freeMemory();
 		ags = null;
 
 		/**
@@ -140,6 +145,7 @@ public class SkySpectrum extends GridSpectrum {
 		// final scaling
 		zls.scale(2.92e-20 * h);
 		this.add(zls);
+		zls.freeMemory();
 		zls = null;
 
 		/**
@@ -148,6 +154,8 @@ public class SkySpectrum extends GridSpectrum {
 
 		GridSpectrum mls = null;
 		// are we above or below the horizon?
+		a.freeMemory(); // the moonlight uses atmospheres of its own
+		a = null;
 		if (Zm >= Math.PI / 2) {
 			mls = new GridSpectrum(0); // assume null spectrum
 		} else {
@@ -176,16 +184,20 @@ public class SkySpectrum extends GridSpectrum {
 			}
 			fm.power(-0.5); // Mie scattering
 			fm.div(a);
+			a.freeMemory();
 			a = null;
 			fm.scale(Math.pow(10, (6.15 - rho / 40)));
 			// combine them
 			GridSpectrum frho = new GridSpectrum();
 			frho.add(fr);
 			frho.add(fm);
+			fr.freeMemory();
 			fr = null;
+			fm.freeMemory();
 			fm = null;
 			GridSpectrum B = new GridSpectrum(1);
 			B.scale(frho);
+			frho.freeMemory();
 			frho = null;
 			// get the illuminance
 			// get the visual magnitude Vm
@@ -199,14 +211,17 @@ public class SkySpectrum extends GridSpectrum {
 			a.apply(I, Xm);
 			I.scale(Istar);
 			B.scale(I);
+			I.freeMemory();
 			I = null;
 			// get the (1-10^-0.4kZ) factor
 			GridSpectrum other = new GridSpectrum(1);
 			a.apply(other, X);
+			a.freeMemory();
 			a = null;
 			other.scale(-1);
 			other.add(1);
 			B.scale(other);
+			other.freeMemory();
 			other = null;
 
 			// now do the solar part
@@ -220,14 +235,18 @@ public class SkySpectrum extends GridSpectrum {
 			SolarSpectrum ss = new SolarSpectrum();
 			ss.scale(5500, 1.12e-19);
 			ss.scale(albedo);
+			albedo.freeMemory();
 			albedo = null;
 			mls = new GridSpectrum(1);
 			mls.scale(B);
 			mls.scale(ss);
+			B.freeMemory();
 			B = null;
+			ss.freeMemory();
 			ss = null;
 		}
 		this.add(mls);
+		mls.freeMemory();
 	}
 
 	/**
@@ -1,8 +1,7 @@
 package org.wiyn.etc.inputSpectra;
 
-import java.io.InputStream;
-
 import za.ac.salt.pipt.common.GridResource;
+import za.ac.salt.pipt.common.GridSnapshot;
 import za.ac.salt.pipt.common.GridSpectrum;
 
 /**
@@ -16,26 +15,23 @@ public class SolarSpectrum extends GridSpectrum {
 	/** a file where to look for the solar spectrum */
 	private static final String PATH = "/resources/rss_pipt-data/solar.10A.txt";
 
-	/** a solar spectrum */
-	private static SolarSpectrum ss = null;
+	/** a snapshot of the solar spectrum, shared by all instances */
+	private static GridSnapshot ss = null;
 
 	/** Creates the solar spectrum. */
 	public SolarSpectrum() {
-		// Create the grid (without the correct values yet). */
-		reset(DEFAULT_LB_STARTING_VALUE, DEFAULT_LB_RESOLUTION,
-				DEFAULT_LB_RANGE);
-		if (SolarSpectrum.ss == null) {
+		GridSnapshot snapshot = SolarSpectrum.ss;
+		if (snapshot == null) {
+			// Create the grid (without the correct values yet). */
+			reset(DEFAULT_LB_STARTING_VALUE, DEFAULT_LB_RESOLUTION,
+					DEFAULT_LB_RANGE);
 			GridResource gr = new GridResource(HOST, PATH);
-			InputStream inputStream = gr.getInputStream();
-			if (inputStream != null) {
-				this.read(inputStream);
-				// cache it
-				SolarSpectrum.ss = (SolarSpectrum) (new SolarSpectrum(this));
+			if (gr.read(this)) {
+				// cache it (the values are only copied if they are changed)
+				SolarSpectrum.ss = new GridSnapshot(this);
 			}
 		} else {
-			for (int i = 0; i < ss.n(); i++) {
-				this.y[i] = ss.y[i];
-			}
+			this.reset(snapshot);
 		}
 	}
 
@@ -43,7 +39,7 @@ public class SolarSpectrum extends GridSpectrum {
 	public SolarSpectrum(SolarSpectrum ss) {
 		this.reset(ss.j(), ss.k(), ss.m());
 		for (int i = 0; i < ss.n(); i++) {
-			this.y[i] = ss.y[i];
+			this.y[i] = ss.y(i);
 		}
 	}
 }
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 
+import za.ac.salt.pipt.common.BufferPool;
 import za.ac.salt.pipt.common.GenericSpectrum;
 
 
@@ -73,13 +74,26 @@ public class TargetSpectrum extends GenericSpectrum
     {
 	setUpdateNeeded(false);
 	reset(DEFAULT_LB_STARTING_VALUE, DEFAULT_LB_RESOLUTION, DEFAULT_LB_RANGE);
+	int n = n();
+	// the scratch arrays are taken from the pool, as this is done for every
+	// update
+	double[] wavelengths = BufferPool.borrow(n);
+	for (int i = 0; i < n; i++) {
+	    wavelengths[i] = x(i);
+	}
+	double[] fluxes = BufferPool.borrow(n);
 	for (int s = 0; s < spectra.size(); s++) {
 	    GenericSpectrum spectrum = (GenericSpectrum) spectra.get(s);
-	    for (int i = 0; i < n(); i++) {
-		y[i] += spectrum.flux(x(i));
+	    // the wavelengths are sorted, so that grid based spectra can be
+	    // evaluated in a single pass
+	    spectrum.evaluate(wavelengths, fluxes);
+	    for (int i = 0; i < n; i++) {
+		y[i] += fluxes[i];
 	    }
 	    spectrum.freeMemory();
 	}
+	BufferPool.giveBack(wavelengths);
+	BufferPool.giveBack(fluxes);
    }
 
 
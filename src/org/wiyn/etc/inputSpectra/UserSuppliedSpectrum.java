@@ -91,6 +91,23 @@ public class UserSuppliedSpectrum extends GenericSpectrum {
 	return interp (wavelength);
     }
 
+    /**
+     * Returns the fluxes at the given wavelengths, which are obtained by
+     * interpolating the spectrum in a single pass for sorted wavelengths. If
+     * necessary, the spectrum is updated first.
+     * 
+     * @param wavelengths
+     *            the wavelengths (in Angstrom)
+     * @param fluxes
+     *            the array into which the fluxes are written
+     */
+    public void evaluate (double[] wavelengths, double[] fluxes) {
+	if (isUpdateNeeded ()) {
+	    update ();
+	}
+	interp (wavelengths, fluxes);
+    }
+
     /**
      * Sets the URL of the user-supplied data for the spectrum and record the
      * fact that the spectrum must be updated before a flux is computed.
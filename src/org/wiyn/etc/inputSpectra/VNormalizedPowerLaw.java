@@ -54,6 +54,17 @@ public class VNormalizedPowerLaw extends PowerLaw implements NormalizedSpectrum
      * @return the normalized flux at the given wavelength
      */
     public double flux (double wavelength) {
+	// Normalize the flux and return the result.
+	return getNormalizationFactor () * nonNormalizedFlux (wavelength);
+    }
+
+    /**
+     * Returns the normalization factor, which is computed again if the index
+     * or the V magnitude have changed since it was last computed.
+     * 
+     * @return the normalization factor
+     */
+    public double getNormalizationFactor () {
 	// If either the index or the V magnitude have changed since the last
 	// call of this method, the normalization factor needs to be calculated
 	// again. Otherwise we may reuse the existing value.
@@ -67,8 +78,7 @@ public class VNormalizedPowerLaw extends PowerLaw implements NormalizedSpectrum
 	previousIndex = index;
 	previousVMagnitude = vMagnitude;
 
-	// Normalize the flux and return the result.
-	return normalizationFactor * nonNormalizedFlux (wavelength);
+	return normalizationFactor;
     }
 
     /**
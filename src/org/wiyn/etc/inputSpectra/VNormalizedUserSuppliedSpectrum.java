@@ -59,13 +59,38 @@ public class VNormalizedUserSuppliedSpectrum extends UserSuppliedSpectrum
      * @return the normalized flux at the given wavelength
      */
     public double flux (double wavelength) {
+	return getNormalizationFactor () * nonNormalizedFlux (wavelength);
+    }
+
+    /**
+     * Returns the normalized fluxes at the given wavelengths, which are
+     * obtained by interpolating the user-supplied data and normalizing the result.
+     * 
+     * @param wavelengths
+     *            the wavelengths (in Angstrom)
+     * @param fluxes
+     *            the array into which the normalized fluxes are written
+     */
+    public void evaluate (double[] wavelengths, double[] fluxes) {
+	super.evaluate (wavelengths, fluxes);
+	FluxNormalization.normalize (this, fluxes, wavelengths.length);
+    }
+
+    /**
+     * Returns the normalization factor, which is computed again if the
+     * magnitude or the magnitude system have changed since it was last
+     * computed.
+     * 
+     * @return the normalization factor
+     */
+    public double getNormalizationFactor () {
 	if (this.referencemagChanged || magSystemChanged) {
 	    normalizationFactor = FluxNormalization.getNormalisationFactor (
 		    myMagSystem, this);
 	    magSystemChanged = false;
 	    referencemagChanged = false;
 	}
-	return normalizationFactor * nonNormalizedFlux (wavelength);
+	return normalizationFactor;
     }
 
     /**
@@ -15,7 +15,8 @@ import org.wiyn.etc.configuration.SpectrumGenerationData;
 import org.wiyn.etc.configuration.TelescopeProperties;
 
 import za.ac.salt.pipt.common.Filter;
-import za.ac.salt.pipt.common.GridSpectrum;
+import za.ac.salt.pipt.common.Grid;
+import za.ac.salt.pipt.common.GridExpression;
 
 /**
  * This class implements an exposure. The spectrum arrives at the CCD, and we
@@ -60,11 +61,11 @@ public class Exposure {
 	/** the full width at half maximum for the PSF */
 	private double fwhm;
 
-	/** the incident target spectrum */
-	private GridSpectrum targetSpectrum;
+	/** the total flux of the target on the detector (in e-/s) */
+	private double targetElectrons;
 
-	/** the incident sky spectrum */
-	private GridSpectrum skySpectrum;
+	/** the total flux of the sky on the detector (in e-/s/arcsec^2) */
+	private double skyElectrons;
 
 	/**
 	 * the (net) exposure timefor a single readout.
@@ -97,19 +98,23 @@ public class Exposure {
 	private double Omega_binned = 0;
 
 	/**
-	 * Clones the given target and sky spectrum, applies the given throughput
-	 * filter to the cloned spectra and subsequently quantizes them. Depending
-	 * on the value of the Config element, an imaging or spectroscopic exposure
-	 * is carried out.
-	 * 
+	 * Carries out a point source exposure for the given target and sky
+	 * spectrum. For each spectrum a single fused pass (see integrateFluxes())
+	 * applies the propagation filter and the ODI throughput filter and
+	 * quantizes the result into electrons, keeping only the total flux after
+	 * each step. The spectra are neither copied nor changed. The signal-to-
+	 * noise ratios are then computed from the electron totals of target and
+	 * sky and added to the given results.
+	 *
 	 * @param spectrumGenerationData
 	 *            the data required for spectrum generation
-	 * @param interferenceFilter
-	 *            the interference filter
-	 * @param rss
-	 *            the RSS setup for the exposure
+	 * @param myExposureConfig
+	 *            the exposure configuration
 	 * @param fwhm
 	 *            the full width at half maximum
+	 * @param Results
+	 *            the results for the apertures to consider, which are filled
+	 *            in
 	 */
 
 	public Exposure(SpectrumGenerationData spectrumGenerationData,
@@ -117,10 +122,6 @@ public class Exposure {
 			Vector<PhotometryExposureResult> Results) {
 
 		// Set the internal variables.
-		this.targetSpectrum = new GridSpectrum(
-				spectrumGenerationData.getTargetSpectrum());
-		this.skySpectrum = new GridSpectrum(
-				spectrumGenerationData.getSkySpectrum());
 		this.myExposureConfig = myExposureConfig;
 		this.fwhm = fwhm;
 		this.exposureTime = myExposureConfig.ExposureTime;
@@ -150,51 +151,58 @@ public class Exposure {
 
 		myLogger.info("\n\n--  Calculating Fluxes from Object and Sky ------------------------------------------------------------\n");
 
+		// Get the instrument's current throughput filter. This also includes
+		// transmission losses in the telescope.
+
+		Filter odiFilter = ODI.theODI.getWIYNODI_ThroughputFilter();
+
+		// Apply the propagation and throughput filters and quantize the
+		// spectra into counts/sec/Ang (/arcsec^2 if diffuse), which is
+		// basically using E=hv at each wavelength bin. All this is done in a
+		// single pass over each spectrum, which also yields the total fluxes
+		// after each step. Only these totals are needed, so that the incident
+		// spectra are read without being copied or changed.
+
+		double[] targetFluxes = integrateFluxes(
+				spectrumGenerationData.getTargetSpectrum(),
+				targetPropagationFilter, odiFilter);
+		double[] skyFluxes = integrateFluxes(
+				spectrumGenerationData.getSkySpectrum(), skyPropagationFilter,
+				odiFilter);
+		targetPropagationFilter.freeMemory();
+		skyPropagationFilter.freeMemory();
+		this.targetElectrons = targetFluxes[3];
+		this.skyElectrons = skyFluxes[3];
+
 		myLogger.info("Total Flux in OBJECT spectrum at X=0............................ [ergs/s/cm^2]          : "
-				+ myNF.format(targetSpectrum.integrate()));
+				+ myNF.format(targetFluxes[0]));
 		myLogger.info("Total Flux SKY spectrum at X=0.................................. [ergs/s/cm^2/arcsec^2] : "
-				+ myNF.format(skySpectrum.integrate()));
-
-		targetPropagationFilter.apply(this.targetSpectrum);
-		skyPropagationFilter.apply(this.skySpectrum);
+				+ myNF.format(skyFluxes[0]));
 
 		myLogger.info("Total Flux collected by telescope - losses in atmosphere OBJECT. [ergs/s]               : "
-				+ myNF.format(targetSpectrum.integrate()));
+				+ myNF.format(targetFluxes[1]));
 		myLogger.info("Total Flux collected by telescope - losses in atmosphere SKY.... [ergs/s/arcsec^2]      : "
-				+ myNF.format(skySpectrum.integrate()));
-
-		// Get the instrument's current throughput filter. This also includes
-		// transmission losses in the telescope.
-
-		Filter odiFilter = ODI.theODI.getWIYNODI_ThroughputFilter();
-		targetSpectrum.scale(odiFilter);
-		skySpectrum.scale(odiFilter);
+				+ myNF.format(skyFluxes[1]));
 
 		myLogger.info("Total Flux left on the detector OBJECT.......................... [ ergs/s]              : "
-				+ myNF.format(targetSpectrum.integrate()));
+				+ myNF.format(targetFluxes[2]));
 
 		myLogger.info("Total Flux left on the detector SKY............................. [ergs/s/arcsec^2]      : "
-				+ myNF.format(skySpectrum.integrate()));
-
-		// Quantize the spectra into counts/sec/Ang (/arcsec^2 if diffuse).
-		// This is basically using E=hv at each wavelength bin
-
-		this.targetSpectrum.quantize();
-		this.skySpectrum.quantize();
+				+ myNF.format(skyFluxes[2]));
 
 		myLogger.info("Total Flux left on the detector in electrons OBJECT............. [e-/s]                 : "
-				+ myNF.format(targetSpectrum.integrate()));
+				+ myNF.format(targetElectrons));
 
 		myLogger.info("Total Flux left on the detector in electrons SKY................ [e-/s/arcsec^2]        : "
-				+ myNF.format(skySpectrum.integrate()));
+				+ myNF.format(skyElectrons));
 
 		double t = myExposureConfig.ExposureTime;
-		double quickSN = targetSpectrum.integrate()
+		double quickSN = targetElectrons
 				* t
 				/ Math.sqrt(100.
 						* 10
 						* 10
-						+ (skySpectrum.integrate() + targetSpectrum.integrate())
+						+ (skyElectrons + targetElectrons)
 						* t);
 		myLogger.info("First S/N estimate: ..............................................................      : "
 				+ myNF.format(quickSN));
@@ -265,8 +273,8 @@ public class Exposure {
 
 	/**
 	 * Carries out an imaging exposure. Upon entry into this procedure the
-	 * internally stored Spectrum targetSpectrum is in the unit photons/Ang/s.
-	 * The skySpectrum has the unit photons/Ang/s/arcsec^2
+	 * total target flux on the detector is in the unit photons/s, and the
+	 * total sky flux has the unit photons/s/arcsec^2
 	 * 
 	 */
 
@@ -285,10 +293,10 @@ public class Exposure {
 		 */
 
 		// the integrated object electrons counts
-		double NTarget = this.targetSpectrum.integrate() * exposureTime; // ergs
+		double NTarget = this.targetElectrons * exposureTime; // ergs
 
 		// sky counts per binning element
-		double NSky = this.skySpectrum.integrate() * exposureTime; // ergs/(sqrarcsec)
+		double NSky = this.skyElectrons * exposureTime; // ergs/(sqrarcsec)
 		double NSky_b = NSky * Omega_binned;
 
 		// dark noise per binning element (squared)
@@ -437,4 +445,24 @@ public class Exposure {
 
 		return saturation;
 	}
+
+	/**
+	 * Returns the total fluxes of the given spectrum as it is propagated to
+	 * the detector: the incident flux, the flux after the propagation filter,
+	 * the flux after the throughput filter and the number of electrons.
+	 * 
+	 * @param spectrum
+	 *            the incident spectrum
+	 * @param propagationFilter
+	 *            the propagation filter
+	 * @param throughputFilter
+	 *            the throughput filter of telescope and instrument
+	 * @return the total fluxes
+	 */
+	private static double[] integrateFluxes(Grid spectrum,
+			Filter propagationFilter, Filter throughputFilter) {
+		return new GridExpression(spectrum).integrate()
+				.scale(propagationFilter).integrate().scale(throughputFilter)
+				.integrate().quantize().integrate().evaluate();
+	}
 }
\ No newline at end of file
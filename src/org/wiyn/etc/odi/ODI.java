@@ -4,7 +4,6 @@ import java.beans.PropertyChangeListener;
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -16,7 +15,10 @@ import java.util.Vector;
 import org.apache.log4j.Logger;
 
 import za.ac.salt.pipt.common.Filter;
+import za.ac.salt.pipt.common.GridExpression;
 import za.ac.salt.pipt.common.GridResource;
+import za.ac.salt.pipt.common.GridSnapshot;
+import za.ac.salt.pipt.common.Interpolation;
 import za.ac.salt.pipt.common.Phase;
 import za.ac.salt.pipt.common.dataExchange.PiptData;
 import za.ac.salt.pipt.common.dataExchange.PiptDataElement;
@@ -89,9 +91,10 @@ public class ODI implements PiptData {
 
     /**
      * This filter will hold common absorption of the instrument, i.e., optic,
-     * coatings, and detector throughput
+     * coatings, and detector throughput. It is kept as a snapshot, which is
+     * shared by all the filters created from it until they are changed.
      */
-    private Filter commonFilter = null;
+    private GridSnapshot commonFilter = null;
 
     private Filter TelluricLines = null;
     public boolean considerFitlerOnly;
@@ -375,6 +378,10 @@ public class ODI implements PiptData {
 
 	}
 
+	// narrow filters vanish over most of the wavelength range, so that
+	// applying the throughput only needs to touch the support window
+	start.useSupportWindow ();
+
 	myLogger.debug ("Returning ODI Throughput filter: " + start);
 	return start;
     }
@@ -394,6 +401,9 @@ public class ODI implements PiptData {
 	    String fname = (String) filterList.get (name);
 	    myLogger.debug ("Read filter from " + fname);
 	    f = loadResourceFilter (ODI.filterDirectory, fname);
+	    if (f != null) {
+		f.useSupportWindow ();
+	    }
 	} else
 	    f = new Filter (1.0);
 	//f.write ("test");
@@ -457,7 +467,7 @@ public class ODI implements PiptData {
      * 
      * @return
      */
-    private Filter getcommonFilter () {
+    private GridSnapshot getcommonFilter () {
 
 	if (commonFilter == null) {
 	    myLogger.debug ("Calculating WIYN/ODI throughput");
@@ -481,10 +491,12 @@ public class ODI implements PiptData {
 	    Filter ADC = loadResourceFilter (WIYNODIDirectory,
 		    "adc_coatingandsylgard_noaoscan.txt");
 	    
+	    // All the throughputs are multiplied in a single pass.
+	    GridExpression throughput = new GridExpression (start);
 	    if (mirror != null) {
-		start.scale (mirror);
-		start.scale (mirror);
-		start.scale (mirror);
+		throughput.scale (mirror);
+		throughput.scale (mirror);
+		throughput.scale (mirror);
 	    }
 
 	    // used to be 4 times the coating; I think for the four surfaces of
@@ -496,18 +508,18 @@ public class ODI implements PiptData {
 	    
 	    
 	    if (pbl6y != null) {
-		start.scale (pbl6y);
+		throughput.scale (pbl6y);
 	    }
 	    if (silica != null) {
-		start.scale (silica);
+		throughput.scale (silica);
 	    }
 	    if (pODIFuge != null) {
-		start.scale (pODIFuge);
+		throughput.scale (pODIFuge);
 	    }
 
 	    {
-		start.scale (ADC);
-		start.scale (ADC);
+		throughput.scale (ADC);
+		throughput.scale (ADC);
 	    }
 	    // Filter ccd = getCCD ("");
 	    // if (ccd != null)
@@ -515,11 +527,15 @@ public class ODI implements PiptData {
 
 	    loadTelluricLines ();
 	    if (TelluricLines != null) {
-		start.scale (TelluricLines);
+		throughput.scale (TelluricLines);
 
 	    }
+	    throughput.evaluate (start);
 
-	    commonFilter = start;
+	    // The common filter is only read from now on, so that a snapshot
+	    // can be shared.
+	    commonFilter = new GridSnapshot (start);
+	    start.freeMemory ();
 
 	    // commonFilter.write (".odiThroughput.dat");
 	    myLogger.debug ("Done");
@@ -550,9 +566,9 @@ public class ODI implements PiptData {
 	try {
 	    // TODO: Clean this code up and remove SALT legacy
 	    GridResource grid = new GridResource (website, fullname);
-	    URL url = grid.getURL ();
-	    if (url != null) {
-		f = new Filter (url);
+	    f = new Filter ();
+	    if (!grid.read (f)) {
+		f = null;
 	    }
 	} catch (Exception e) {
 	    myLogger.error ("Cannot read ODI filter: " + fullname, e);
@@ -616,6 +632,10 @@ public class ODI implements PiptData {
 
 	this.TelluricLines = loadResourceFilter (WIYNODIDirectory,
 		"kpnotellurix.txt");
+	if (this.TelluricLines != null) {
+	    // the absorption lines are sharp, so interpolate linearly
+	    this.TelluricLines.setInterpolationKernel (Interpolation.LINEAR);
+	}
 	// this.TelluricLines = new Filter(1.0);
     }
 
@@ -0,0 +1,97 @@
+package za.ac.salt.pipt.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of double arrays, which allows large arrays to be reused rather than
+ * allocated anew for every calculation. Grids borrow the arrays for their
+ * ordinate values and second derivatives from the pool, and give them back
+ * when they are reset or their memory is freed. Only arrays to which no other
+ * code can refer may be given back, such as the arrays owned by a grid and
+ * temporary arrays.
+ * <p>
+ * An array must not be used any longer after it has been given back, as it
+ * may be handed out again at any time. The pool keeps at most MAX_BYTES bytes
+ * of arrays; arrays given back beyond that are left to the garbage collector.
+ */
+public final class BufferPool {
+	/** the maximum memory (in bytes) used by the arrays kept in the pool */
+	public static final long MAX_BYTES = 16L << 20;
+
+	/** the arrays available for borrowing, by array length */
+	private static final Map<Integer, List<double[]>> buffers = new HashMap<Integer, List<double[]>>();
+
+	/** the memory (in bytes) used by the arrays kept in the pool */
+	private static long bytes = 0;
+
+	/** There are no instances of this class. */
+	private BufferPool() {
+	}
+
+	/**
+	 * Returns an array of the given length, all of whose elements are 0. The
+	 * array is taken from the pool if possible.
+	 *
+	 * @param length
+	 *            the array length
+	 * @return the array
+	 */
+	public static double[] borrow(int length) {
+		double[] buffer = null;
+		synchronized (buffers) {
+			List<double[]> available = buffers.get(length);
+			if (available != null && !available.isEmpty()) {
+				buffer = available.remove(available.size() - 1);
+				bytes -= 8L * length;
+			}
+		}
+		if (buffer == null) {
+			return new double[length];
+		}
+		Arrays.fill(buffer, 0);
+		return buffer;
+	}
+
+	/**
+	 * Gives the given array back to the pool. Null and arrays which have been
+	 * given back already are ignored, as are arrays which would take the
+	 * memory used by the pool beyond MAX_BYTES.
+	 *
+	 * @param buffer
+	 *            the array
+	 */
+	public static void giveBack(double[] buffer) {
+		if (buffer == null || buffer.length == 0) {
+			return;
+		}
+		synchronized (buffers) {
+			if (bytes + 8L * buffer.length > MAX_BYTES) {
+				return;
+			}
+			List<double[]> available = buffers.get(buffer.length);
+			if (available == null) {
+				available = new ArrayList<double[]>();
+				buffers.put(buffer.length, available);
+			}
+			for (int i = 0; i < available.size(); i++) {
+				if (available.get(i) == buffer) {
+					return;
+				}
+			}
+			available.add(buffer);
+			bytes += 8L * buffer.length;
+		}
+	}
+
+	/** Releases all the arrays in the pool to the garbage collector. */
+	public static void clear() {
+		synchronized (buffers) {
+			buffers.clear();
+			bytes = 0;
+		}
+	}
+}
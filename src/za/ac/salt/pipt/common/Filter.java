@@ -60,6 +60,18 @@ public class Filter extends Grid implements SpectrumOperator {
 	super (grid);
     }
 
+    /**
+     * Creates a filter the throughput of which is given by the specified
+     * snapshot. The throughput values are shared with the snapshot until the
+     * filter is changed.
+     * 
+     * @param snapshot
+     *            the snapshot
+     */
+    public Filter(GridSnapshot snapshot) {
+	reset (snapshot);
+    }
+
     /**
      * Create a box filter which is 0 everywhere, and 1 if cutOn < wavelength <
      * cutOff
@@ -19,6 +19,9 @@ import za.ac.salt.pipt.common.dataExchange.PiptDataElement;
  * preservation and quantizing.
  */
 public abstract class GenericSpectrum extends Grid implements PiptData {
+    /** h*c with length = angstroms */
+    static final double HC = 1.986484121e-8;
+
     /** states whether this spectrum is a diffuse one */
     private boolean diffuse = false;
 
@@ -129,94 +132,34 @@ public abstract class GenericSpectrum extends Grid implements PiptData {
      */
     public void resample (double resampledWavelengths[],
 	    double resampledData[], int nold) {
-	// make temporary destination arrays
-	int nnew = this.n (); // for speed
-	double[] xnew = new double[nnew];
-	double[] ynew = new double[nnew];
-
-	// initialize the new arrays
-	for (int i = 0; i < nnew; i++) {
-	    xnew[i] = this.x (i);
-	    ynew[i] = 0;
-	}
-
-	/*
-	 * Now, move through the input array. For each of its bins, sequentially
-	 * locate each output bin that overlaps. For each overlap, pro-rate the
-	 * input energy into the output bin according to the degree of overlap.
-	 */
-
-	int j = 0; /* index into the output array */
-	double x1_hi; /* high edge of input zone */
-	double x1_lo; /* low edge of input zone */
-	double x2_hi; /* high edge of output zone */
-	double x2_lo; /* low edge of output zone */
-	for (int i = 0; i < nold; i++) {
-	    // move the input zone to the next overlap
-	    x2_lo = x_lo (xnew, j);
-	    while ((x1_hi = x_hi (resampledWavelengths, i)) < x2_lo) {
-		i++;
-		if (i == nold) {
-		    // we are done
-		    this.y = ynew;
-		    // System.out.println(this.getClass().getName() +
-		    // ".resample: done: " + this);
-		    return;
-		}
-	    }
-
-	    // get the other input zone edge
-	    x1_lo = x_lo (resampledWavelengths, i);
-	    // move the output zone to the next overlap
-	    while ((x2_hi = x_hi (xnew, j)) < x1_lo) {
-		j++;
-		if (j == nnew) {
-		    /* we are done */
-		    this.y = ynew;
-		    return;
-		}
-	    }
-
-	    // increment output zones overlapped by this input zone
-	    // (watch the order of evaluation of the j<n factor below!)
-	    while ((j < nnew) && ((x2_lo = x_lo (xnew, j)) < x1_hi)) {
-
-		// get the upper of the current output zone
-		x2_hi = x_hi (xnew, j);
-
-		// get the overlap low edge
-		double o1 = Math.max (x1_lo, x2_lo);
-		// get the overlap high edge
-		double o2 = Math.min (x1_hi, x2_hi);
-
-		// reassign the energy in the overlap region
-
-		// this is the energy in the overlap region
-		double a = resampledData[i] * (o2 - o1);
-		// System.out.println(this.getClass().getName() +
-		// ".resample: a: " + a);
-
-		// this is the new energy density
-		a /= (x2_hi - x2_lo);
-		// System.out.println(this.getClass().getName() +
-		// ".resample: a: " + a);
-
-		// add it in
-		ynew[j] += a;
-
-		// move to the next output zone
-		j++;
-	    }
-
-	    /*
-	     * now back up one output zone, because it may be hit by the next
-	     * input zone.
-	     */
-	    j--;
-	}
+	// the rebinning only depends on the wavelengths and the grid, so that
+	// it can be reused for other data given at the same wavelengths
+	double[] ynew = BufferPool.borrow (this.n ());
+	ResamplingOperator.getInstance (resampledWavelengths, nold, this).apply (
+		resampledData, ynew);
+
+	// abandon the original data (without converting them to a full array
+	// first) and replace with the new
+	useValues (ynew);
+    }
 
-	// abandon the original data and replace with the new
-	this.y = ynew;
+    /**
+     * Does the same area-preserving resampling as resample(double[], double[],
+     * int). The rebinning moves through the input and output bins together, so
+     * it is always done sequentially and the parallel flag is ignored.
+     *
+     * @param resampledWavelengths
+     *            the wavelengths which are resampled
+     * @param resampledData
+     *            the corresponding resampled (ordinate) data
+     * @param nold
+     *            the number of data points
+     * @param parallel
+     *            ignored
+     */
+    public void resample (double resampledWavelengths[],
+	    double resampledData[], int nold, boolean parallel) {
+	resample (resampledWavelengths, resampledData, nold);
     }
 
     /**
@@ -225,14 +168,12 @@ public abstract class GenericSpectrum extends Grid implements PiptData {
      * @return the total number of photons (per second) for this spectrum
      */
     public int quantize () {
-	double hc = 1.986484121e-8; // h*c with length = angstroms
 	double nphotons = 0;
 	int n = this.n ();
-	for (int i = 0; i < n; i++) {
-	    double x = this.x (i);
-	    y[i] *= x / hc;
-	    nphotons += y[i]; // per sec per angstrom
-	}
+	useFullArray ();
+	ensureUpdate ();
+	GridKernels.scaleByAbscissa (y, n, this.x0 (), this.dx (), HC);
+	nphotons = Summation.sum (y, 0, n); // per sec per angstrom
 	nphotons *= this.dx (); // per sec
 	return (int) nphotons;
     }
@@ -243,10 +184,33 @@ public abstract class GenericSpectrum extends Grid implements PiptData {
      * @return the integral over the whole wavelength range
      */
     public double integrate () {
+	return integrate (false);
+    }
+
+    /**
+     * Returns the integral of this spectrum over the whole wavelength range.
+     * The sum is computed pairwise with compensated partial sums (see the
+     * Summation class), so that its rounding error doesn't grow with the
+     * number of bins. If requested, the sum is split across fork-join tasks,
+     * which yields the same result bit for bit.
+     * 
+     * @param parallel
+     *            states whether the sum may be computed in parallel
+     * @return the integral over the whole wavelength range
+     */
+    public double integrate (boolean parallel) {
 	double integral = 0;
 	int n = this.n (); // for speed
-	for (int i = 0; i < n; i++) {
-	    integral += this.y[i];
+	if (this.y != null) {
+	    integral = Summation.sum (this.y, 0, n, parallel);
+	} else {
+	    // sum a copy, so that the result doesn't depend on the storage
+	    double[] values = BufferPool.borrow (n);
+	    for (int i = 0; i < n; i++) {
+		values[i] = this.y (i);
+	    }
+	    integral = Summation.sum (values, 0, n, parallel);
+	    BufferPool.giveBack (values);
 	}
 	integral *= this.dx (); // equal size bins comes out of the integral
 	return integral;
@@ -273,46 +237,6 @@ public abstract class GenericSpectrum extends Grid implements PiptData {
 	return diffuse;
     }
 
-    /**
-     * Returns the wavelength of the low edge of the bin with the given index.
-     * 
-     * @param index
-     *            the index of the bin whose low edge is returned
-     * @return the wavelength of the low edge of the bin with the given index
-     */
-    private static double x_lo (double[] x, int index) {
-	double v = 0;
-
-	/* watch out for the low edge of the array */
-	if (index > 0) {
-	    v = (x[index - 1] + x[index]) / 2; // normal
-	} else {
-	    v = x[0] - (x[1] - x[0]) / 2; // edge
-	}
-
-	return v;
-    }
-
-    /**
-     * Returns the wavelength of the high edge of the bin with the given index.
-     * 
-     * @param index
-     *            the index of the bin whose high edge is returned
-     * @return the wavelength of the high edge of the bin with the given index
-     */
-    private static double x_hi (double[] x, int index) {
-	double v = 0;
-
-	// watch out for the high edge of the array
-	if (index < x.length - 1) {
-	    v = (x[index] + x[index + 1]) / 2; // normal
-	} else {
-	    v = x[index] + (x[index] - x[index - 1]) / 2; // edge
-	}
-
-	return v;
-    }
-
     /**
      * Fires a property change event with the given property name, old value and
      * new value.
@@ -391,6 +315,36 @@ public abstract class GenericSpectrum extends Grid implements PiptData {
      */
     public abstract double flux (double wavelength);
 
+    /**
+     * Evaluates the flux at each of the given wavelengths. By default this
+     * just calls flux() for every wavelength. Spectra based on a grid should
+     * override this method so that they make use of Grid.interp(double[],
+     * double[]), which is much faster for sorted wavelengths.
+     * 
+     * @param wavelengths
+     *            the wavelengths (in Angstrom)
+     * @param fluxes
+     *            the array into which the fluxes are written; it must be at
+     *            least as long as the array of wavelengths
+     */
+    public void evaluate (double[] wavelengths, double[] fluxes) {
+	for (int i = 0; i < wavelengths.length; i++) {
+	    fluxes[i] = flux (wavelengths[i]);
+	}
+    }
+
+    /**
+     * Returns the grid spectrum whose ordinate values are the (non-normalized)
+     * fluxes of this spectrum at its wavelengths, if there is one. This allows
+     * the index of GridSpectrum.integrate(double, double) to be used. The
+     * returned grid must not be modified. By default, null is returned.
+     * 
+     * @return the grid spectrum providing the fluxes, or null
+     */
+    public GridSpectrum getFluxGrid () {
+	return null;
+    }
+
     /** Updates the spectrum. */
     public abstract void update ();
 
@@ -1,15 +1,26 @@
 package za.ac.salt.pipt.common;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.StringTokenizer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.zip.GZIPInputStream;
 
 import javax.swing.JFileChooser;
@@ -89,6 +100,31 @@ public class Grid {
 	 */
 	public static final int DEFAULT_LB_RANGE = 13; // 8192
 
+	/**
+	 * the maximum number of bins interpolated by a single task when data are
+	 * resampled in parallel
+	 */
+	private static final int RESAMPLING_CHUNK_SIZE = 8192;
+
+	/** the first int of a file written by writeBinary() ("GRD2" in ASCII) */
+	public static final int BINARY_MAGIC = 0x47524432;
+
+	/** the length (in bytes) of the header of a file written by writeBinary() */
+	private static final int BINARY_HEADER_LENGTH = 40;
+
+	/**
+	 * the largest binary logarithm of the number of bins accepted for binary
+	 * grid data (2 ^ 24 bins take 128 MB as a full array, whereas the default
+	 * grid has 2 ^ 17 bins)
+	 */
+	private static final int MAX_BINARY_LB_BINS = 24;
+
+	/** the initial capacity of the arrays into which read() reads data */
+	private static final int READ_CAPACITY = 1024;
+
+	/** the maximum number of zeros added in front of data read by read() */
+	private static final int MAX_LEADING_ZEROS = 262143;
+
 	/** the starting value of the abcissa (as the binary logarithmic value) */
 	private int j;
 
@@ -104,21 +140,73 @@ public class Grid {
 	/** the number of bins */
 	private int n;
 
-	/** the ordinate values (public, not private, for fast access) */
+	/**
+	 * the ordinate values (public, not private, for fast access); null while
+	 * the grid is held as a support window or in a mapped buffer. The array
+	 * belongs to the grid, and references to it must not be kept beyond the
+	 * next reset or freeMemory(), which may reuse it or give it back to the
+	 * BufferPool.
+	 */
 	public double[] y;
 
-	/** 2nd derivatives of ordinate data */
+	/**
+	 * the array borrowed from the BufferPool for the ordinate values; the grid
+	 * only owns y (and may thus reuse it or give it back) as long as y is this
+	 * array, so that an array assigned to y by other code is never given back
+	 */
+	private double[] ownedY;
+
+	/**
+	 * the ordinate values within the support window; only non-null while the
+	 * grid is held as a support window (see useSupportWindow()), in which case
+	 * y is null
+	 */
+	private double[] yw;
+
+	/** the index of the first bin of the support window (yw or ym) */
+	private int windowStart;
+
+	/**
+	 * the ordinate values in a read-only buffer, such as a memory-mapped file
+	 * or the values shared with a GridSnapshot; only non-null while the grid
+	 * is mapped (see map(File) and reset(GridSnapshot)), in which case y is
+	 * null; the buffer starts with the bin windowStart, and all the bins
+	 * outside it are 0
+	 */
+	private DoubleBuffer ym;
+
+	/**
+	 * 2nd derivatives of ordinate data. Most grids are never interpolated, so
+	 * this array is allocated by the first interpolation only, and it is
+	 * released again whenever the ordinate values are changed.
+	 */
 	private double[] ypp;
 
+	/**
+	 * the cached pyramid of lower resolution versions of this grid (see
+	 * pyramidLevel(int)); the element with index d has the resolution k + d,
+	 * and elements which haven't been built yet are null
+	 */
+	private Grid[] pyramid;
+
 	/**
 	 * For cubic spline interpolation, we need to compute the 1st and 2nd
 	 * derivatives. We don't want to do this for each interpolation, of which
 	 * there might be many. But we need to recompute if any of the grid data are
 	 * changed. We keep a "dirty bit" to indicate that the cached derivatives
-	 * are no longer valid.
+	 * are no longer valid (or haven't been allocated yet).
 	 */
 	private boolean dirty = true;
 
+	/** the content fingerprint; only valid if fingerprintDirty is false */
+	private long fingerprint;
+
+	/** states whether the content fingerprint has to be computed again */
+	private boolean fingerprintDirty = true;
+
+	/** the kernel used by the interp() methods */
+	private InterpolationKernel interpolationKernel = Interpolation.LOCAL_CUBIC;
+
 	/**
 	 * Creates the grid with the default values for the abscissa starting value,
 	 * resolution and range.
@@ -226,6 +314,17 @@ public class Grid {
 		}
 	}
 
+	/**
+	 * Creates the grid from the given snapshot. The ordinate values of the
+	 * snapshot are shared until the grid is changed.
+	 * 
+	 * @param snapshot
+	 *            the snapshot
+	 */
+	public Grid(GridSnapshot snapshot) {
+		this.reset(snapshot);
+	}
+
 	/**
 	 * Creates the grid by cloning the given grid.
 	 * 
@@ -235,20 +334,206 @@ public class Grid {
 	public Grid(Grid grid) {
 
 		this.reset(grid.j(), grid.k(), grid.m());
+		this.interpolationKernel = grid.interpolationKernel;
 
-		for (int i = 0; i < this.n; i++) {
-			this.y[i] = grid.y[i];
+		if (grid.y != null) {
+			for (int i = 0; i < this.n; i++) {
+				this.y[i] = grid.y[i];
+			}
+		} else if (grid.ym != null) {
+			for (int i = 0; i < grid.ym.capacity(); i++) {
+				this.y[grid.windowStart + i] = grid.ym.get(i);
+			}
+		} else {
+			System.arraycopy(grid.yw, 0, this.y, grid.windowStart,
+					grid.yw.length);
 		}
 	}
 
 	/**
 	 * Frees the memory for the arrays containing the ordinate values and the
-	 * second derivatives by setting the array variables to null.
+	 * second derivatives by setting the array variables to null. The arrays
+	 * borrowed from the BufferPool are given back, so that they can be reused
+	 * by the next grid.
 	 */
 	public void freeMemory() {
+		this.releaseY();
+		BufferPool.giveBack(ypp);
 		y = null;
+		yw = null;
+		ym = null;
 		ypp = null;
-		System.gc();
+		pyramid = null;
+		fingerprintDirty = true;
+	}
+
+	/**
+	 * Converts the ordinate values back to a full array, if they are held as a
+	 * support window or in a read-only buffer. Afterwards the public y array
+	 * may be accessed again.
+	 */
+	public void useFullArray() {
+		if (this.yw != null) {
+			this.borrowY();
+			System.arraycopy(this.yw, 0, this.y, this.windowStart,
+					this.yw.length);
+			this.yw = null;
+		} else if (this.ym != null) {
+			this.borrowY();
+			DoubleBuffer values = this.ym.duplicate();
+			values.rewind();
+			values.get(this.y, this.windowStart, values.capacity());
+			this.ym = null;
+		}
+	}
+
+	/**
+	 * Replaces the ordinate values with the given array, which must have n
+	 * elements and have been borrowed from the BufferPool. The grid takes
+	 * over the array. The current values are discarded without being
+	 * converted to a full array first, as they are overwritten anyway.
+	 * 
+	 * @param values
+	 *            the new ordinate values
+	 */
+	void useValues(double[] values) {
+		this.releaseY();
+		this.y = values;
+		this.ownedY = values;
+		this.yw = null;
+		this.ym = null;
+		this.windowStart = 0;
+		this.ensureUpdate();
+	}
+
+	/**
+	 * Stores only the support window of this grid, i.e. the range of bins from
+	 * the first to the last non-zero ordinate value. This is meant for grids
+	 * which vanish over most of the abscissa range and which are read many
+	 * times afterwards, such as narrow filter curves. Grid operations with such
+	 * a grid as their argument only touch the bins overlapping with its support
+	 * window. The public y array is null afterwards, and methods modifying the ordinate values convert the grid
+	 * back to a full array first. No precision is lost.
+	 */
+	public void useSupportWindow() {
+		this.useFullArray();
+		if (this.y == null) {
+			return;
+		}
+		int start = 0;
+		while (start < this.n && this.y[start] == 0) {
+			start++;
+		}
+		int end = this.n;
+		while (end > start && this.y[end - 1] == 0) {
+			end--;
+		}
+		this.yw = new double[end - start];
+		System.arraycopy(this.y, start, this.yw, 0, end - start);
+		this.windowStart = start;
+		this.releaseY();
+		this.y = null;
+	}
+
+	/**
+	 * States whether only the support window of this grid is stored.
+	 * 
+	 * @return true if only the support window is stored
+	 */
+	public boolean isSupportWindow() {
+		return this.yw != null;
+	}
+
+	/**
+	 * Returns the index of the first bin of the support window. All ordinate
+	 * values before this bin are 0. If this grid isn't held as a support
+	 * window (or in a read-only buffer covering part of the grid only), 0 is
+	 * returned.
+	 * 
+	 * @return the index of the first bin of the support window
+	 */
+	public int supportStart() {
+		return this.yw != null || this.ym != null ? this.windowStart : 0;
+	}
+
+	/**
+	 * Returns the index following the last bin of the support window. All
+	 * ordinate values from this bin onwards are 0. If this grid isn't held as
+	 * a support window (or in a read-only buffer covering part of the grid
+	 * only), the number of bins is returned.
+	 * 
+	 * @return the index following the last bin of the support window
+	 */
+	public int supportEnd() {
+		if (this.yw != null) {
+			return this.windowStart + this.yw.length;
+		}
+		if (this.ym != null) {
+			return this.windowStart + this.ym.capacity();
+		}
+		return this.n;
+	}
+
+	/**
+	 * Returns the index of the first bin of the support window at the given
+	 * resolution.
+	 * 
+	 * @param lbResolution
+	 *            the resolution, given as the binary logarithmic value
+	 * @return the index of the first bin of the support window
+	 */
+	private int supportStart(int lbResolution) {
+		int start = this.supportStart();
+		if (lbResolution >= this.k) {
+			return start >> (lbResolution - this.k);
+		} else {
+			return start << (this.k - lbResolution);
+		}
+	}
+
+	/**
+	 * Returns the index following the last bin of the support window at the
+	 * given resolution. Unused bins at the end are abandoned, as in
+	 * resample(int).
+	 * 
+	 * @param lbResolution
+	 *            the resolution, given as the binary logarithmic value
+	 * @return the index following the last bin of the support window
+	 */
+	private int supportEnd(int lbResolution) {
+		int end = this.supportEnd();
+		if (lbResolution >= this.k) {
+			int factor = 1 << (lbResolution - this.k);
+			return Math.min((end + factor - 1) / factor, this.n(lbResolution));
+		} else {
+			return end << (this.k - lbResolution);
+		}
+	}
+
+	/**
+	 * Returns the ordinate value at the given index, irrespective of whether it
+	 * is held in the y array, as a support window or in a mapped buffer. No
+	 * bounds checking is done.
+	 * 
+	 * @param index
+	 *            the index
+	 * @return the ordinate value at the given index
+	 */
+	private double value(int index) {
+		if (this.y != null) {
+			return this.y[index];
+		}
+		int windowIndex = index - this.windowStart;
+		if (this.ym != null) {
+			if (windowIndex >= 0 && windowIndex < this.ym.capacity()) {
+				return this.ym.get(windowIndex);
+			}
+			return 0;
+		}
+		if (windowIndex >= 0 && windowIndex < this.yw.length) {
+			return this.yw[windowIndex];
+		}
+		return 0;
 	}
 
 	/**
@@ -428,12 +713,156 @@ public class Grid {
 		double y = 0;
 		if (index >= 0) {
 			if (index < this.n) {
-				y = this.y[index];
+				y = this.value(index);
 			}
 		}
 		return y;
 	}
 
+	/**
+	 * Returns the ordinate value at the given index of the grid obtained by
+	 * changing the resolution of this grid to the given one, as resample(int)
+	 * would do it. The grid itself is left untouched. The index refers to the
+	 * starting value of this grid. If the index is out of bounds, 0 is returned
+	 * instead.
+	 * 
+	 * @param index
+	 *            the index (at the given resolution)
+	 * @param lbResolution
+	 *            the resolution, given as the binary logarithmic value
+	 * @return the ordinate value at the given index and resolution
+	 */
+	public double y(int index, int lbResolution) {
+		if (lbResolution == this.k) {
+			return this.y(index);
+		}
+		if (index < 0 || index >= this.n(lbResolution)) {
+			return 0;
+		}
+		if (lbResolution < this.k) {
+			// higher resolution: each of our bins is split
+			return this.value(index >> (this.k - lbResolution));
+		}
+
+		// lower resolution: average over the combined bins
+		int depth = lbResolution - this.k;
+		return this.pairwiseAverage(index << depth, depth);
+	}
+
+	/**
+	 * Returns the average of the 2^depth ordinate values from the given index
+	 * onwards, obtained by averaging pairs of bins depth times in succession.
+	 * This is the order in which resample(int) and pyramidLevel(int) combine
+	 * the bins, so that the result is identical to theirs.
+	 * 
+	 * @param start
+	 *            the index of the first value
+	 * @param depth
+	 *            the number of times pairs of bins are combined
+	 * @return the average value
+	 */
+	private double pairwiseAverage(int start, int depth) {
+		if (depth == 0) {
+			return this.value(start);
+		}
+		int half = 1 << (depth - 1);
+		return (this.pairwiseAverage(start, depth - 1) + this.pairwiseAverage(
+				start + half, depth - 1)) / 2;
+	}
+
+	/**
+	 * Returns a lower resolution version of this grid, as resample(int) would
+	 * produce it. The levels of resolution form a pyramid, each level being
+	 * obtained from the next higher one by combining pairs of bins. They are
+	 * built when they are first requested and cached afterwards, so that
+	 * subsequent requests neither copy nor recompute any data. The cache is
+	 * discarded whenever this grid is modified by one of its methods; if the
+	 * public y array is changed directly, ensureUpdate() must be called.
+	 * <p>
+	 * The returned grid is shared and must not be modified. If the given
+	 * resolution equals the resolution of this grid, this grid itself is
+	 * returned.
+	 * 
+	 * @param lbResolution
+	 *            the resolution, given as the binary logarithmic value
+	 * @return the grid with the given resolution
+	 * @throws InvalidValueException
+	 *             if the given resolution is higher than that of this grid or
+	 *             exceeds its range
+	 */
+	public Grid pyramidLevel(int lbResolution) {
+		if (lbResolution < this.k) {
+			throw new InvalidValueException("The resolution " + lbResolution
+					+ " is higher than the grid resolution " + this.k + ".");
+		}
+		if (lbResolution > this.m) {
+			throw new InvalidValueException("The resolution " + lbResolution
+					+ " exceeds the grid range " + this.m + ".");
+		}
+		int depth = lbResolution - this.k;
+		if (depth == 0) {
+			return this;
+		}
+		if (this.pyramid == null || this.pyramid.length <= depth) {
+			Grid[] pyramid = new Grid[depth + 1];
+			if (this.pyramid != null) {
+				System.arraycopy(this.pyramid, 0, pyramid, 0,
+						this.pyramid.length);
+			}
+			pyramid[0] = this;
+			this.pyramid = pyramid;
+		}
+
+		// build the missing levels from the highest existing one
+		int d = depth;
+		while (this.pyramid[d] == null) {
+			d--;
+		}
+		for (; d < depth; d++) {
+			Grid finer = this.pyramid[d];
+			Grid coarser = new Grid(this.j, this.k + d + 1, this.m);
+			for (int i = 0; i < coarser.n; i++) {
+				coarser.y[i] = (finer.value(2 * i) + finer.value(2 * i + 1)) / 2;
+			}
+			this.pyramid[d + 1] = coarser;
+		}
+		return this.pyramid[depth];
+	}
+
+	/**
+	 * Returns the number of grid points this grid would have at the given
+	 * resolution. Unused bins at the end are abandoned, as in resample(int).
+	 * 
+	 * @param lbResolution
+	 *            the resolution, given as the binary logarithmic value
+	 * @return the number of grid points at the given resolution
+	 */
+	private int n(int lbResolution) {
+		if (lbResolution >= this.k) {
+			return this.n >> (lbResolution - this.k);
+		} else {
+			return this.n << (this.k - lbResolution);
+		}
+	}
+
+	/**
+	 * Returns the index in the given grid (at the resolution of this grid) of
+	 * the bin corresponding to bin 0 of this grid.
+	 * 
+	 * @param grid
+	 *            the other grid
+	 * @return the offset in bins
+	 */
+	int offset(Grid grid) {
+		int offset = this.x0() - grid.x0(); // offset in Angstroms
+		if (this.k < 0) {
+			offset *= (1 << -this.k);
+		} else {
+			offset /= (1 << this.k);
+		}
+		return offset;
+	}
+
 	/**
 	 * Return the value of the second derivative at the given index. If the
 	 * index is out of bounds, 0 is returned instead.
@@ -446,6 +875,7 @@ public class Grid {
 		double ypp = 0;
 		if (index >= 0) {
 			if (index < this.n) {
+				this.updateDerivatives();
 				ypp = this.ypp[index];
 			}
 		}
@@ -478,10 +908,10 @@ public class Grid {
 	 * @return the minimum ordinate value
 	 */
 	public double ymin() {
-		double ymin = this.y[0];
+		double ymin = this.value(0);
 		for (int i = 1; i < this.n; i++) {
-			if (this.y[i] < ymin) {
-				ymin = this.y[i];
+			if (this.value(i) < ymin) {
+				ymin = this.value(i);
 			}
 		}
 		return ymin;
@@ -493,24 +923,24 @@ public class Grid {
 	 * @return the maximum ordinate value
 	 */
 	public double ymax() {
-		double ymax = this.y[0];
+		double ymax = this.value(0);
 		int maxi = 0;
 		for (int i = 1; i < this.n; i++) {
-			if (this.y[i] > ymax && this.x(i) > 3200 && this.x(i) < 10000) {
+			if (this.value(i) > ymax && this.x(i) > 3200 && this.x(i) < 10000) {
 				// insert by DRH: limit max search to optical range only
-				ymax = this.y[i];
+				ymax = this.value(i);
 				maxi = i;
 			}
 		}
-		System.err.println("Found maximum value: " + x(maxi) + " " + y[maxi]);
+		System.err.println("Found maximum value: " + x(maxi) + " " + value(maxi));
 		return (ymax);
 
 	}
 
 	/**
 	 * Resets the various grid variables according to the given parameters. The
-	 * dirty bit is set so that the second derivatives will be recalculated
-	 * later on.
+	 * dirty bit is set so that the second derivatives will be calculated later
+	 * on, if they are needed at all.
 	 * 
 	 * @param lbStartingValue
 	 *            the starting value of the abscissa, given as the binary
@@ -531,13 +961,66 @@ public class Grid {
 		// = 2 ^ (lbRange - lbResolution) bins.
 		this.n = 1 << (m - k);
 
-		// Create the arrays containing the ordinate values and their second
-		// derivatives.
-		this.y = new double[this.n];
-		this.ypp = new double[this.n];
+		// Create the array containing the ordinate values, reusing the current
+		// array if it is owned by the grid and has the right length, and
+		// otherwise using a pooled one if possible. The array for their second
+		// derivatives is only created when it is needed.
+		if (this.y != null && this.y == this.ownedY
+				&& this.y.length == this.n) {
+			Arrays.fill(this.y, 0);
+		} else {
+			this.releaseY();
+			this.borrowY();
+		}
+		this.yw = null;
+		this.ym = null;
 
 		// The second derivates will have to be computed later on...
-		this.dirty = true;
+		this.ensureUpdate();
+	}
+
+	/**
+	 * Resets the grid to the starting value, resolution, range and ordinate
+	 * values of the given snapshot. The values aren't copied; the grid reads
+	 * them from the snapshot, as it reads a mapped file, until it is changed
+	 * for the first time. Only then (or when useFullArray() is called)
+	 * a copy of the values is made (copy-on-write), so that any number of
+	 * grids may be obtained from a cached snapshot cheaply and safely.
+	 * 
+	 * @param snapshot
+	 *            the snapshot
+	 */
+	public void reset(GridSnapshot snapshot) {
+		this.j = snapshot.j();
+		this.k = snapshot.k();
+		this.m = snapshot.m();
+		this.n = snapshot.n();
+		this.releaseY();
+		this.y = null;
+		this.yw = null;
+		this.ym = snapshot.values();
+		this.windowStart = 0;
+		this.ensureUpdate();
+	}
+
+	/**
+	 * Borrows an array for n ordinate values from the BufferPool and makes it
+	 * the (owned) y array.
+	 */
+	private void borrowY() {
+		this.y = BufferPool.borrow(this.n);
+		this.ownedY = this.y;
+	}
+
+	/**
+	 * Gives the y array back to the BufferPool if it is owned by the grid.
+	 * The y array must not be used afterwards.
+	 */
+	private void releaseY() {
+		if (this.y != null && this.y == this.ownedY) {
+			BufferPool.giveBack(this.y);
+		}
+		this.ownedY = null;
 	}
 
 	/**
@@ -574,7 +1057,10 @@ public class Grid {
 
 	/**
 	 * Reads data into arrays from an input stream. The number of data points is
-	 * returned.
+	 * returned. Each line must contain two numbers (the abscissa and the
+	 * ordinate value), unless its first token starts with '!' or '#', in which
+	 * case it is a comment. The stream is parsed byte by byte (see
+	 * GridDataParser), so that no objects are created per line.
 	 * 
 	 * @param xdata
 	 *            the abscissa values
@@ -587,12 +1073,30 @@ public class Grid {
 	 *             if an exception is raised while reading in the grid data
 	 */
 	public int read(double xdata[], double ydata[], InputStream inputStream) {
-		int ndata = 0;
-		int nmax = Math.min(xdata.length, ydata.length);
+		DataPoints points = new DataPoints(xdata, ydata, false);
+		this.read(points, inputStream);
+		return points.n;
+	}
+
+	/**
+	 * Reads data into the given data points from an input stream, as described
+	 * for read(double[], double[], InputStream). If the arrays of the data
+	 * points are growable, they are enlarged as required, and all the data are
+	 * read; otherwise reading stops when they are full.
+	 * 
+	 * @param points
+	 *            the data points
+	 * @param inputStream
+	 *            the input stream from which the data is read
+	 * @throws InvalidValueException
+	 *             if an exception is raised while reading in the grid data
+	 */
+	private void read(DataPoints points, InputStream inputStream) {
+		int nmax = points.growable ? Integer.MAX_VALUE : points.capacity();
+		int maxLeading = points.growable ? MAX_LEADING_ZEROS : nmax - 1;
 
 		try {
-			InputStreamReader isr = new InputStreamReader(inputStream);
-			BufferedReader br = new BufferedReader(isr);
+			GridDataParser parser = new GridDataParser(inputStream);
 
 			boolean done = false;
 
@@ -600,52 +1104,47 @@ public class Grid {
 			double lambda = 0;
 			// read the data
 			while (!done) {
-				String s = br.readLine();
-				if (s == null) {
+				if (!parser.nextLine()) {
 					done = true;
 				} else {
-					StringTokenizer st = new StringTokenizer(s);
+					// blank lines aren't allowed
+					if (!parser.nextToken()) {
+						throw new NoSuchElementException();
+					}
 					// check for comment lines
-					String s1 = st.nextToken();
-					s1 = s1.trim();
-					if (s1.charAt(0) == '!' || s1.charAt(0) == '#'
-							|| s1.matches(" *")) {
+					int start1 = parser.tokenStart();
+					int end1 = parser.tokenEnd();
+					char c = parser.firstCharacter();
+					if (c == '!' || c == '#') {
 						// comment
-					} else if (!st.hasMoreTokens()) {
+					} else if (!parser.nextToken()) {
 						// we need two things per line
 						throw new InvalidValueException(
 								"The grid data must contain two numbers per line. Comments must be preceded by a '!' or a '#'.");
 					} else {
-						String s2 = st.nextToken();
-						lambda = Double.parseDouble(s1);
-						double value = Double.parseDouble(s2);
+						lambda = parser.parseDouble(start1, end1);
+						double value = parser.parseDouble(parser.tokenStart(),
+								parser.tokenEnd());
 						if (!firstProcessed) {
 							for (double ll = 3000; ll < lambda-11; ll += 10) {
-								xdata[ndata] = ll;
-								ydata[ndata] = 0;
-								
-								ndata++;
-								if (ndata == nmax-1) {
-									done = true;
+								points.add(ll, 0);
+								if (points.n == maxLeading) {
+									done = !points.growable;
 									break;
 								}
 							}
 							firstProcessed = true;
 
 						}
-						xdata[ndata] = lambda;
-						ydata[ndata] = value;
-						ndata++;
-						if (ndata == nmax) {
+						points.add(lambda, value);
+						if (points.n == nmax) {
 							done = true;
 						}
 					}
 				}
 			}
-			for (double ll = lambda+10; ll < 11000 && ndata < nmax; ll+=10) {
-				xdata[ndata] = ll;
-				ydata[ndata] = 0;
-				ndata++;
+			for (double ll = lambda+10; ll < 11000 && points.n < nmax; ll+=10) {
+				points.add(ll, 0);
 			}
 
 		} catch (NumberFormatException nfe) {
@@ -658,24 +1157,107 @@ public class Grid {
 					"When trying to read in grid data, the following error occured: "
 							+ exception.getMessage());
 		}
-		return ndata;
 	}
 
 	/**
 	 * Reads a Grid from an InputStream. The number of data points is returned.
+	 * The data are read into arrays which start small and grow as required, so
+	 * that there is no limit on the number of data points, and reading a short
+	 * file needs little memory.
 	 * 
 	 * @param inputStream
 	 *            the input stream from which the data is read
 	 * @return the number of data points
 	 */
 	public int read(InputStream inputStream) {
-		int nmax = 262144; // the maximum number of input values
-		double xdata[] = new double[nmax];
-		double ydata[] = new double[nmax];
-		int ndata = this.read(xdata, ydata, inputStream);
-		this.resample(xdata, ydata, ndata); // the data may be irregularly
-		// spaced
-		return ndata;
+		DataPoints points = new DataPoints(new double[READ_CAPACITY],
+				new double[READ_CAPACITY], true);
+		this.read(points, inputStream);
+
+		// the area-preserving resampling uses the array element following the
+		// data for the high edge of the last data point, which must be 0
+		points.ensureCapacity(points.n + 1);
+		this.resample(points.x, points.y, points.n); // the data may be
+		// irregularly spaced
+		return points.n;
+	}
+
+	/**
+	 * Data points held in a pair of arrays, which may be growable. Growable
+	 * arrays are doubled in size whenever they are full, and array elements
+	 * not occupied by data points are always 0.
+	 */
+	private static class DataPoints {
+		/** the abscissa values */
+		private double[] x;
+
+		/** the ordinate values */
+		private double[] y;
+
+		/** the number of data points */
+		private int n;
+
+		/** states whether the arrays may be replaced by larger ones */
+		private final boolean growable;
+
+		/**
+		 * Creates data points stored in the given arrays, none of which is
+		 * occupied yet.
+		 * 
+		 * @param x
+		 *            the array for the abscissa values
+		 * @param y
+		 *            the array for the ordinate values
+		 * @param growable
+		 *            states whether the arrays may be replaced by larger ones
+		 */
+		DataPoints(double[] x, double[] y, boolean growable) {
+			this.x = x;
+			this.y = y;
+			this.n = 0;
+			this.growable = growable;
+		}
+
+		/**
+		 * Returns the number of data points which fit into the arrays.
+		 * 
+		 * @return the number of data points which fit into the arrays
+		 */
+		int capacity() {
+			return Math.min(this.x.length, this.y.length);
+		}
+
+		/**
+		 * Adds a data point. If the arrays are full, they must be growable.
+		 * 
+		 * @param x
+		 *            the abscissa value
+		 * @param y
+		 *            the ordinate value
+		 */
+		void add(double x, double y) {
+			if (this.n == this.x.length) {
+				this.ensureCapacity(this.n + 1);
+			}
+			this.x[this.n] = x;
+			this.y[this.n] = y;
+			this.n++;
+		}
+
+		/**
+		 * Makes sure that the (growable) arrays can hold at least the given
+		 * number of data points.
+		 * 
+		 * @param capacity
+		 *            the required number of data points
+		 */
+		void ensureCapacity(int capacity) {
+			if (this.capacity() < capacity) {
+				int length = Math.max(capacity, 2 * this.capacity());
+				this.x = Arrays.copyOf(this.x, length);
+				this.y = Arrays.copyOf(this.y, length);
+			}
+		}
 	}
 
 	/**
@@ -732,25 +1314,20 @@ public class Grid {
 	}
 
 	/**
-	 * Use cubic spline interpolation to return the ordinate at the given
-	 * abcissa value. From Numerical Recipes, Press et al. 1987 pp 88-89. This
-	 * is private because Grids don't normally have x-arrays. Uses explicit
-	 * x-values.
+	 * Returns the index of the lower data point bracketing the given abscissa
+	 * value, as obtained by a binary search. The upper bracketing data point
+	 * follows the returned one. Uses explicit x-values, which must be in
+	 * ascending order.
 	 * 
-	 * @param ypp
-	 *            the array of the second derivatives
 	 * @param x
 	 *            the array of abscissa values
-	 * @param y
-	 *            the array of ordinate values
 	 * @param n
-	 *            the number of bins
+	 *            the number of data points
 	 * @param xForInterpolation
-	 *            the abscissa value for which the interpolation is carried out
-	 * @return the interpolated ordinate value
+	 *            the abscissa value
+	 * @return the index of the lower bracketing data point
 	 */
-	private static double interp(double ypp[], double x[], double y[], int n,
-			double xForInterpolation) {
+	private static int bracket(double x[], int n, double xForInterpolation) {
 		int k1 = 0; // guess at low bracket
 		int k2 = n - 1; // guess at high bracket
 		while ((k2 - k1) > 1) {
@@ -761,7 +1338,31 @@ public class Grid {
 				k1 = k;
 			}
 		}
+		return k1;
+	}
 
+	/**
+	 * Use cubic spline interpolation to return the ordinate at the given
+	 * abcissa value. From Numerical Recipes, Press et al. 1987 pp 88-89. This
+	 * is private because Grids don't normally have x-arrays. Uses explicit
+	 * x-values.
+	 * 
+	 * @param ypp
+	 *            the array of the second derivatives
+	 * @param x
+	 *            the array of abscissa values
+	 * @param y
+	 *            the array of ordinate values
+	 * @param k1
+	 *            the index of the lower bracketing data point
+	 * @param k2
+	 *            the index of the upper bracketing data point
+	 * @param xForInterpolation
+	 *            the abscissa value for which the interpolation is carried out
+	 * @return the interpolated ordinate value
+	 */
+	private static double interp(double ypp[], double x[], double y[], int k1,
+			int k2, double xForInterpolation) {
 		double h = x[k2] - x[k1];
 
 		if (h == 0.0) {
@@ -782,70 +1383,322 @@ public class Grid {
 	}
 
 	/**
-	 * Interpolate a value on the grid. This is different from the static
-	 * interp() method in that we have no array of x-values.
-	 * 
-	 * @param xForInterpolation
-	 *            the abscissa value for which the interpolation is carried out
-	 * @return the interpolated ordinate value
+	 * Computes the second derivatives required for cubic spline interpolation,
+	 * unless they are still valid. The array for the derivatives is allocated
+	 * if necessary. As the bins are equally spaced, the tridiagonal system for
+	 * the derivatives only depends on the number of bins, and its
+	 * factorization is taken from a cache (see SplineFactorization). Solving
+	 * the system thus takes a forward and a backward sweep, and the forward
+	 * sweep stores its intermediate results in the array for the derivatives,
+	 * so that no scratch space is needed.
 	 */
-	public double interp(double xForInterpolation) {
-		if (this.dirty) {
-			// we need to recompute the derivatives
-
-			// allocate the scratch space
-			double[] u = new double[this.n];
-
-			/* 2nd derivative is zero at the ends */
-			this.ypp[0] = u[0] = 0.0;
-
-			for (int i = 1; i < this.n - 1; i++) {
-				double sig = (this.x(i) - this.x(i - 1))
-						/ (this.x(i + 1) - this.x(i - 1));
-				double p = sig * ypp[i - 1] + 2;
-				this.ypp[i] = (sig - 1) / p;
-
-				/*
-				 * the expression from the book: sheesh! u[i] =
-				 * (6((y[i+1]-y[i])/(x[i+1]-x[i])-(y[i]-y[i-1])
-				 * /(x[i]-x[i-1]))/(x[i+1]-x[i-1])-sigu[i-1])/p
-				 */
-
-				u[i] = (this.y[i + 1] - this.y[i])
-						/ (this.x(i + 1) - this.x(i));
-				u[i] -= (this.y[i] - this.y[i - 1])
-						/ (this.x(i) - this.x(i - 1));
-				u[i] *= (double) 6;
-				u[i] /= this.x(i + 1) - this.x(i - 1);
-				u[i] -= sig * u[i - 1];
-				u[i] /= p;
-			}
+	private void updateDerivatives() {
+		if (!this.dirty && this.ypp != null) {
+			return;
+		}
 
-			this.ypp[n - 1] = 0.0;
+		// allocate the derivatives
+		if (this.ypp == null || this.ypp.length != this.n) {
+			BufferPool.giveBack(this.ypp);
+			this.ypp = BufferPool.borrow(this.n);
+		}
 
-			/* now do the back substitution */
-			for (int i = this.n - 2; i >= 0; i--) {
-				this.ypp[i] = (this.ypp[i] * this.ypp[i + 1]) + u[i];
-			}
+		SplineFactorization factorization = SplineFactorization
+				.getInstance(this.n);
+		double[] inversePivots = factorization.inversePivots;
+		double[] backFactors = factorization.backFactors;
 
-			/* free up the scratch space */
-			u = null;
+		// 6 times the second difference divided by 2 h, and divided by h again
+		double h = this.dx();
+		double c = 3 / (h * h);
 
-			// we are clean now
-			this.dirty = false;
+		/* 2nd derivative is zero at the ends */
+		this.ypp[0] = 0.0;
+
+		double previous = this.n > 0 ? this.value(0) : 0;
+		double current = this.n > 1 ? this.value(1) : 0;
+		for (int i = 1; i < this.n - 1; i++) {
+			double next = this.value(i + 1);
+			double u = (next - 2 * current + previous) * c;
+			this.ypp[i] = (u - 0.5 * this.ypp[i - 1]) * inversePivots[i];
+			previous = current;
+			current = next;
 		}
 
-		int k1 = 0; // guess at low bracket
-		int k2 = this.n - 1; // guess at high bracket
-		while ((k2 - k1) > 1) {
-			int k = (k1 + k2) / 2;
-			if (this.x(k) > xForInterpolation) {
+		if (this.n > 0) {
+			this.ypp[this.n - 1] = 0.0;
+		}
+
+		/* now do the back substitution */
+		for (int i = this.n - 2; i >= 0; i--) {
+			this.ypp[i] = backFactors[i] * this.ypp[i + 1] + this.ypp[i];
+		}
+
+		// we are clean now
+		this.dirty = false;
+	}
+
+	/**
+	 * The factorization of the tridiagonal system solved for the second
+	 * derivatives of a cubic spline through equally spaced points. With the
+	 * second derivatives vanishing at the ends, the system has the same
+	 * coefficients (1/2, 2, 1/2, up to a factor) for any grid with the same
+	 * number of bins, independent of its starting value and resolution. The
+	 * factorizations are created once per number of bins and shared by all
+	 * grids.
+	 */
+	private static class SplineFactorization {
+		/** the factorizations created so far, by number of bins */
+		private static final Map<Integer, SplineFactorization> instances = new HashMap<Integer, SplineFactorization>();
+
+		/** the inverse pivots of the forward sweep */
+		private final double[] inversePivots;
+
+		/** the factors of the back substitution */
+		private final double[] backFactors;
+
+		/**
+		 * Returns the factorization for the given number of bins.
+		 * 
+		 * @param n
+		 *            the number of bins
+		 * @return the factorization
+		 */
+		static synchronized SplineFactorization getInstance(int n) {
+			SplineFactorization factorization = instances.get(n);
+			if (factorization == null) {
+				factorization = new SplineFactorization(n);
+				instances.put(n, factorization);
+			}
+			return factorization;
+		}
+
+		/**
+		 * Creates the factorization for the given number of bins.
+		 * 
+		 * @param n
+		 *            the number of bins
+		 */
+		private SplineFactorization(int n) {
+			this.inversePivots = new double[n];
+			this.backFactors = new double[n];
+			for (int i = 1; i < n - 1; i++) {
+				double p = 0.5 * this.backFactors[i - 1] + 2;
+				this.inversePivots[i] = 1 / p;
+				this.backFactors[i] = -0.5 / p;
+			}
+		}
+	}
+
+	/**
+	 * Returns the kernel used for interpolating this grid.
+	 * 
+	 * @return the interpolation kernel
+	 */
+	public InterpolationKernel getInterpolationKernel() {
+		return this.interpolationKernel;
+	}
+
+	/**
+	 * Sets the kernel used for interpolating this grid. By default, the local
+	 * cubic kernel is used. See the Interpolation enumeration for the speed and
+	 * accuracy of the standard kernels.
+	 * 
+	 * @param interpolationKernel
+	 *            the interpolation kernel
+	 * @throws InvalidValueException
+	 *             if the kernel is null
+	 */
+	public void setInterpolationKernel(InterpolationKernel interpolationKernel) {
+		if (interpolationKernel == null) {
+			throw new InvalidValueException(
+					"The interpolation kernel must not be null.");
+		}
+		this.interpolationKernel = interpolationKernel;
+	}
+
+	/**
+	 * Interpolate a value on the grid. This is different from the static
+	 * interp() method in that we have no array of x-values. The interpolation
+	 * kernel of this grid is used.
+	 * 
+	 * @param xForInterpolation
+	 *            the abscissa value for which the interpolation is carried out
+	 * @return the interpolated ordinate value
+	 */
+	public double interp(double xForInterpolation) {
+		return this.interpolationKernel.interp(this, xForInterpolation);
+	}
+
+	/**
+	 * Interpolate a value on the grid linearly between the two bins bracketing
+	 * the abscissa value. Outside the grid, the first or last two bins are
+	 * extrapolated.
+	 * 
+	 * @param xForInterpolation
+	 *            the abscissa value for which the interpolation is carried out
+	 * @return the interpolated ordinate value
+	 */
+	public double interpLinear(double xForInterpolation) {
+		if (this.n < 2) {
+			return this.n == 1 ? this.value(0) : 0;
+		}
+
+		// the bins bracketing the abscissa value
+		double position = (xForInterpolation - this.x0()) / this.dx();
+		int k1 = (int) Math.floor(position);
+		k1 = Math.max(0, Math.min(k1, this.n - 2));
+		double t = position - k1;
+
+		double y1 = this.value(k1);
+		return y1 + t * (this.value(k1 + 1) - y1);
+	}
+
+	/**
+	 * Interpolate a value on the grid, using a local cubic (Catmull-Rom)
+	 * interpolation, which only depends on the two bins on either side of the
+	 * abscissa value. Hence the time required doesn't depend on the size of
+	 * the grid, even if the grid has just been changed.
+	 * 
+	 * @param xForInterpolation
+	 *            the abscissa value for which the interpolation is carried out
+	 * @return the interpolated ordinate value
+	 */
+	public double interpCubic(double xForInterpolation) {
+		if (this.n < 2) {
+			return this.n == 1 ? this.value(0) : 0;
+		}
+
+		// the bins bracketing the abscissa value
+		double position = (xForInterpolation - this.x0()) / this.dx();
+		int k1 = (int) Math.floor(position);
+		k1 = Math.max(0, Math.min(k1, this.n - 2));
+		int k2 = k1 + 1;
+		double t = position - k1;
+
+		// the neighbouring bins, extrapolated linearly at the grid edges
+		double y1 = this.value(k1);
+		double y2 = this.value(k2);
+		double y0 = k1 > 0 ? this.value(k1 - 1) : 2 * y1 - y2;
+		double y3 = k2 < this.n - 1 ? this.value(k2 + 1) : 2 * y2 - y1;
+
+		return y1
+				+ 0.5
+				* t
+				* (y2 - y0 + t
+						* (2 * y0 - 5 * y1 + 4 * y2 - y3 + t
+								* (3 * (y1 - y2) + y3 - y0)));
+	}
+
+	/**
+	 * Interpolate a value on the grid, using the cubic spline through all the
+	 * grid values. If the grid has changed since the last spline
+	 * interpolation, the second derivatives have to be computed for the whole
+	 * grid first.
+	 * 
+	 * @param xForInterpolation
+	 *            the abscissa value for which the interpolation is carried out
+	 * @return the interpolated ordinate value
+	 */
+	public double interpSpline(double xForInterpolation) {
+		// we may need to recompute the derivatives
+		this.updateDerivatives();
+
+		int k1 = this.bracket(xForInterpolation);
+		return this.interp(xForInterpolation, k1, Math.min(k1 + 1, this.n - 1));
+	}
+
+	/**
+	 * Interpolates the grid at each of the given abscissa values, using the
+	 * interpolation kernel of this grid.
+	 * 
+	 * @param xsForInterpolation
+	 *            the abscissa values for which the interpolation is carried out
+	 * @param interpolated
+	 *            the array into which the interpolated values are written; it
+	 *            must be at least as long as the array of abscissa values
+	 */
+	public void interp(double[] xsForInterpolation, double[] interpolated) {
+		this.interpolationKernel.interp(this, xsForInterpolation, interpolated);
+	}
+
+	/**
+	 * Interpolates the grid at each of the given abscissa values, using the
+	 * global cubic spline. This gives the same values as calling
+	 * interpSpline(double) for every abscissa value, but it is much faster for
+	 * sorted abscissa values. For these the bracketing
+	 * bins are found by moving a cursor forward through the grid rather than
+	 * by a binary search, so that the time required is linear in the number of
+	 * abscissa values and bins. Unsorted abscissa values are allowed, but
+	 * whenever an abscissa value is smaller than its predecessor, a binary
+	 * search is carried out.
+	 * 
+	 * @param xsForInterpolation
+	 *            the abscissa values for which the interpolation is carried out
+	 * @param interpolated
+	 *            the array into which the interpolated values are written; it
+	 *            must be at least as long as the array of abscissa values
+	 */
+	public void interpSpline(double[] xsForInterpolation,
+			double[] interpolated) {
+		// we may need to recompute the derivatives
+		this.updateDerivatives();
+
+		int last = Math.max(this.n - 2, 0); // largest possible low bracket
+		int k1 = 0;
+		double previous = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < xsForInterpolation.length; i++) {
+			double x = xsForInterpolation[i];
+			if (x >= previous) {
+				// step forward
+				while (k1 < last && this.x(k1 + 1) <= x) {
+					k1++;
+				}
+			} else {
+				k1 = this.bracket(x);
+			}
+			previous = x;
+			interpolated[i] = this.interp(x, k1, Math.min(k1 + 1, this.n - 1));
+		}
+	}
+
+	/**
+	 * Returns the index of the lower bin bracketing the given abscissa value,
+	 * as obtained by a binary search. The upper bracketing bin follows the
+	 * returned one.
+	 * 
+	 * @param xForInterpolation
+	 *            the abscissa value
+	 * @return the index of the lower bracketing bin
+	 */
+	private int bracket(double xForInterpolation) {
+		int k1 = 0; // guess at low bracket
+		int k2 = this.n - 1; // guess at high bracket
+		while ((k2 - k1) > 1) {
+			int k = (k1 + k2) / 2;
+			if (this.x(k) > xForInterpolation) {
 				k2 = k;
 			} else {
 				k1 = k;
 			}
 		}
+		return k1;
+	}
 
+	/**
+	 * Interpolates the grid at the given abscissa value, using the cubic
+	 * spline between the given bracketing bins. The second derivatives must be
+	 * up to date.
+	 * 
+	 * @param xForInterpolation
+	 *            the abscissa value for which the interpolation is carried out
+	 * @param k1
+	 *            the lower bracketing bin
+	 * @param k2
+	 *            the upper bracketing bin
+	 * @return the interpolated ordinate value
+	 */
+	private double interp(double xForInterpolation, int k1, int k2) {
 		double h = this.x(k2) - this.x(k1);
 
 		if (h == 0.0) {
@@ -858,8 +1711,8 @@ public class Grid {
 		double d = (b * b * b - b) * (h * h / 6);
 
 		double yInterpolated = 0.0;
-		yInterpolated += a * this.y[k1];
-		yInterpolated += b * this.y[k2];
+		yInterpolated += a * this.value(k1);
+		yInterpolated += b * this.value(k2);
 		yInterpolated += c * this.ypp[k1];
 		yInterpolated += d * this.ypp[k2];
 
@@ -878,8 +1731,9 @@ public class Grid {
 	public void setValue(int index, double y) {
 		if (index >= 0) {
 			if (index < this.n) {
+				this.useFullArray();
 				this.y[index] = y;
-				this.dirty = true; // someone may need to recompute derivatives
+				this.ensureUpdate(); // someone may need to recompute derivatives
 			}
 		}
 		return;
@@ -893,6 +1747,11 @@ public class Grid {
 	 *            the new resolution, given as the binary logarithmic value
 	 */
 	public void resample(int lbResolution) {
+		if (this.k != lbResolution) {
+			this.useFullArray();
+			this.ensureUpdate();
+		}
+
 		while (this.k < lbResolution) {
 			// go to lower resolution (combine bins)
 			for (int i = 0; i < this.n - 1; i += 2) {
@@ -905,11 +1764,13 @@ public class Grid {
 
 		while (this.k > lbResolution) {
 			// go to higher resolution (split bins)
-			double ynew[] = new double[this.n * 2];
+			double ynew[] = BufferPool.borrow(this.n * 2);
 			for (int i = 0; i < ynew.length; i++) {
 				ynew[i] = this.y[i / 2];
 			}
+			this.releaseY();
 			this.y = ynew;
+			this.ownedY = ynew;
 			this.k--;
 			this.n *= 2;
 		}
@@ -919,7 +1780,8 @@ public class Grid {
 
 	/**
 	 * Resamples the given data onto the grid. The data may be irregularly
-	 * spaced.
+	 * spaced. Large grids are interpolated in parallel (see
+	 * resample(double[], double[], int, boolean)).
 	 * 
 	 * @param xdata
 	 *            the abscissa data
@@ -929,10 +1791,73 @@ public class Grid {
 	 *            the number of data points
 	 */
 	public void resample(double xdata[], double ydata[], int ndata) {
+		this.resample(xdata, ydata, ndata, true);
+	}
+
+	/**
+	 * Resamples the given data onto the grid. The data may be irregularly
+	 * spaced. If requested,
+	 * the bins are split into chunks which are interpolated in parallel by
+	 * fork-join tasks. As the bins are independent of each other, this doesn't
+	 * change the result.
+	 * 
+	 * @param xdata
+	 *            the abscissa data
+	 * @param ydata
+	 *            the ordinate data
+	 * @param ndata
+	 *            the number of data points
+	 * @param parallel
+	 *            states whether the bins may be interpolated in parallel
+	 */
+	public void resample(double xdata[], double ydata[], int ndata,
+			boolean parallel) {
+		this.useFullArray();
+		this.ensureUpdate();
+
 		// resample the file data onto ourselves
 		double ypp[] = new double[ndata];
 		Grid.getYpp(ypp, xdata, ydata, ndata);
-		for (int i = 0; i < this.n; i++) { // loop over our x-values, not the
+		boolean ascending = true;
+		for (int i = 1; i < ndata && ascending; i++) {
+			ascending = xdata[i] >= xdata[i - 1];
+		}
+		if (parallel && this.n > RESAMPLING_CHUNK_SIZE) {
+			ForkJoinPool.commonPool().invoke(
+					new ResamplingTask(ypp, xdata, ydata, ndata, ascending, 0,
+							this.n));
+		} else {
+			this.resample(ypp, xdata, ydata, ndata, ascending, 0, this.n);
+		}
+	}
+
+	/**
+	 * Interpolates the given data for the bins from start (inclusive) to end
+	 * (exclusive). If the abscissa data are in ascending order, the bracketing
+	 * data points are found by a binary search for the first bin and by
+	 * stepping forward for the others. Otherwise a binary search is done for
+	 * every bin, as the stepping might end up with different data points.
+	 * 
+	 * @param ypp
+	 *            the second derivatives of the data
+	 * @param xdata
+	 *            the abscissa data
+	 * @param ydata
+	 *            the ordinate data
+	 * @param ndata
+	 *            the number of data points
+	 * @param ascending
+	 *            states whether the abscissa data are in ascending order
+	 * @param start
+	 *            the first bin
+	 * @param end
+	 *            the bin following the last bin
+	 */
+	private void resample(double ypp[], double xdata[], double ydata[],
+			int ndata, boolean ascending, int start, int end) {
+		int last = Math.max(ndata - 2, 0); // largest possible low bracket
+		int k1 = Grid.bracket(xdata, ndata, this.x(start));
+		for (int i = start; i < end; i++) { // loop over our x-values, not the
 			// file's
 			double xForInterpolation = this.x(i);
 			// only interpolate in the domain of the given data arrays
@@ -941,9 +1866,88 @@ public class Grid {
 			} else if (xForInterpolation > xdata[ndata - 1]) {
 				this.y[i] = 0;
 			} else {
-				this.y[i] = Grid.interp(ypp, xdata, ydata, ndata,
-						xForInterpolation);
+				if (!ascending) {
+					k1 = Grid.bracket(xdata, ndata, xForInterpolation);
+				}
+				while (ascending && k1 < last
+						&& xdata[k1 + 1] <= xForInterpolation) {
+					k1++;
+				}
+				this.y[i] = Grid.interp(ypp, xdata, ydata, k1,
+						Math.min(k1 + 1, ndata - 1), xForInterpolation);
+			}
+		}
+	}
+
+	/**
+	 * A fork-join task interpolating data for a range of bins, which is split
+	 * in halves until it contains at most RESAMPLING_CHUNK_SIZE bins.
+	 */
+	private class ResamplingTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** the second derivatives of the data */
+		private final double[] ypp;
+
+		/** the abscissa data */
+		private final double[] xdata;
+
+		/** the ordinate data */
+		private final double[] ydata;
+
+		/** the number of data points */
+		private final int ndata;
+
+		/** whether the abscissa data are in ascending order */
+		private final boolean ascending;
+
+		/** the first bin */
+		private final int start;
+
+		/** the bin following the last bin */
+		private final int end;
+
+		/**
+		 * Creates the task for the given data and range of bins.
+		 * 
+		 * @param ypp
+		 *            the second derivatives of the data
+		 * @param xdata
+		 *            the abscissa data
+		 * @param ydata
+		 *            the ordinate data
+		 * @param ndata
+		 *            the number of data points
+		 * @param ascending
+		 *            states whether the abscissa data are in ascending order
+		 * @param start
+		 *            the first bin
+		 * @param end
+		 *            the bin following the last bin
+		 */
+		ResamplingTask(double[] ypp, double[] xdata, double[] ydata,
+				int ndata, boolean ascending, int start, int end) {
+			this.ypp = ypp;
+			this.xdata = xdata;
+			this.ydata = ydata;
+			this.ndata = ndata;
+			this.ascending = ascending;
+			this.start = start;
+			this.end = end;
+		}
+
+		/** Interpolates the data for the range of bins. */
+		protected void compute() {
+			if (this.end - this.start <= RESAMPLING_CHUNK_SIZE) {
+				Grid.this.resample(this.ypp, this.xdata, this.ydata,
+						this.ndata, this.ascending, this.start, this.end);
+				return;
 			}
+			int middle = (this.start + this.end) / 2;
+			invokeAll(new ResamplingTask(this.ypp, this.xdata, this.ydata,
+					this.ndata, this.ascending, this.start, middle),
+					new ResamplingTask(this.ypp, this.xdata, this.ydata,
+							this.ndata, this.ascending, middle, this.end));
 		}
 	}
 
@@ -954,32 +1958,63 @@ public class Grid {
 	 *            the value added to all ordinate grid values
 	 */
 	public void add(double addedValue) {
-		for (int i = 0; i < this.n; i++) {
-			this.y[i] += addedValue;
-		}
+		this.useFullArray();
+		this.ensureUpdate();
+		GridKernels.add(this.y, 0, this.n, addedValue);
 	}
 
 	/**
 	 * Adds the ordinate values of the given grid to the corresponding values of
-	 * grid.
+	 * grid. The bins are matched through their abscissa values, and the given
+	 * grid is read at the resolution of this grid without being changed. Bins
+	 * not covered by the given grid remain unchanged.
 	 * 
 	 * @param grid
 	 *            the grid whose ordinate values are added to this grid
 	 */
 	public void add(Grid grid) {
-		// force a match in resolution
-		grid.resample(this.k);
+		this.useFullArray();
+		this.ensureUpdate();
+		grid.addTo(this.y, 0, 0, this.n, this.k, this.offset(grid));
+	}
 
-		// find the partner of our bin 0 in the other grid
-		int offset = this.x0() - grid.x0(); // offset in Angstroms
-		if (this.k < 0) {
-			offset *= (1 << -this.k);
-		} else {
-			offset /= (1 << this.k);
+	/**
+	 * Adds the ordinate values of this grid, read at the given resolution, to
+	 * a range of bins of another grid. The value for bin i (start &lt;= i &lt;
+	 * end) of the other grid is stored in values[i - first], and its partner in
+	 * this grid is bin i + offset. Only the bins overlapping with the support
+	 * of this grid are touched.
+	 * 
+	 * @param values
+	 *            the values to which the ordinate values are added
+	 * @param first
+	 *            the bin corresponding to values[0]
+	 * @param start
+	 *            the first bin of the range
+	 * @param end
+	 *            the bin following the last bin of the range
+	 * @param lbResolution
+	 *            the resolution, given as the binary logarithmic value
+	 * @param offset
+	 *            the offset of this grid's bins relative to the other grid's
+	 */
+	void addTo(double[] values, int first, int start, int end,
+			int lbResolution, int offset) {
+		int from = Math.max(start, this.supportStart(lbResolution) - offset);
+		int to = Math.min(end, this.supportEnd(lbResolution) - offset);
+		if (from >= to) {
+			return;
 		}
-
-		for (int i = 0; i < this.n; i++) {
-			this.y[i] += grid.y[i];
+		if (this.k == lbResolution && this.y != null) {
+			GridKernels.add(values, this.y, offset + first, from - first, to
+					- first);
+		} else if (this.k == lbResolution && this.yw != null) {
+			GridKernels.add(values, this.yw, offset + first - this.windowStart,
+					from - first, to - first);
+		} else {
+			for (int i = from; i < to; i++) {
+				values[i - first] += this.y(i + offset, lbResolution);
+			}
 		}
 	}
 
@@ -990,34 +2025,67 @@ public class Grid {
 	 *            the factor by which the ordinate values are scaled
 	 */
 	public void scale(double scalingFactor) {
-		for (int i = 0; i < this.n; i++) {
-			this.y[i] *= scalingFactor;
-		}
+		this.useFullArray();
+		this.ensureUpdate();
+		GridKernels.scale(this.y, 0, this.n, scalingFactor);
 	}
 
 	/**
-	 * Scales this grid with the given grid.
+	 * Scales this grid with the given grid. The bins are matched through their
+	 * abscissa values, and the given grid is read at the resolution of this
+	 * grid without being changed. Bins not covered by the given grid are set
+	 * to 0.
 	 * 
 	 * @param grid
 	 *            the grid with which this grid is scaled
 	 */
 	public void scale(Grid grid) {
-		// force a match in resolution
-		grid.resample(this.k);
+		this.useFullArray();
+		this.ensureUpdate();
+		grid.multiply(this.y, 0, 0, this.n, this.k, this.offset(grid));
+	}
 
-		// find the partner of our bin 0 in the other grid
-		int offset = this.x0() - grid.x0(); // offset in Angstroms
-		if (this.k < 0) {
-			offset *= (1 << -this.k);
+	/**
+	 * Multiplies a range of bins of another grid by the ordinate values of this
+	 * grid, read at the given resolution. The value for bin i (start &lt;= i
+	 * &lt; end) of the other grid is stored in values[i - first], and its
+	 * partner in this grid is bin i + offset. Values outside the support of
+	 * this grid are set to 0.
+	 * 
+	 * @param values
+	 *            the values which are multiplied
+	 * @param first
+	 *            the bin corresponding to values[0]
+	 * @param start
+	 *            the first bin of the range
+	 * @param end
+	 *            the bin following the last bin of the range
+	 * @param lbResolution
+	 *            the resolution, given as the binary logarithmic value
+	 * @param offset
+	 *            the offset of this grid's bins relative to the other grid's
+	 */
+	void multiply(double[] values, int first, int start, int end,
+			int lbResolution, int offset) {
+		int from = Math.min(Math.max(start,
+				this.supportStart(lbResolution) - offset), end);
+		int to = Math.max(Math.min(end, this.supportEnd(lbResolution) - offset),
+				from);
+
+		// bins outside the support are scaled by 0
+		Arrays.fill(values, start - first, from - first, 0);
+		Arrays.fill(values, to - first, end - first, 0);
+		if (this.k == lbResolution && this.y != null) {
+			GridKernels.scale(values, this.y, offset + first, from - first, to
+					- first);
+		} else if (this.k == lbResolution && this.yw != null) {
+			GridKernels.scale(values, this.yw, offset + first
+					- this.windowStart, from - first, to - first);
 		} else {
-			offset /= (1 << this.k);
-		}
-
-		for (int i = 0; i < this.n; i++) {
-			this.y[i] *= grid.y[i];
+			for (int i = from; i < to; i++) {
+				values[i - first] *= this.y(i + offset, lbResolution);
+			}
 		}
-
-		return;
 	}
 
 	/**
@@ -1038,38 +2106,43 @@ public class Grid {
 	}
 
 	/**
-	 * Divides this grid by the given grid.
+	 * Divides this grid by the given grid. The bins are matched through their
+	 * abscissa values, and the given grid is read at the resolution of this
+	 * grid without being changed. Bins not covered by the given grid (or for
+	 * which it is 0) remain unchanged.
 	 * 
 	 * @param grid
 	 *            the grid by which to divide this grid
 	 */
 	public void div(Grid grid) {
-		// force a match in resolution
-		grid.resample(this.k);
-
-		// find the partner of our bin 0 in the other grid
-		int offset = this.x0() - grid.x0(); // offset in Angstroms
-		if (this.k < 0) {
-			offset *= (1 << -this.k);
+		// find the partner of our bin 0 in the other grid, and the range of
+		// bins overlapping with the support of the other grid
+		int offset = this.offset(grid);
+		int start = Math.max(0, grid.supportStart(this.k) - offset);
+		int end = Math.min(this.n, grid.supportEnd(this.k) - offset);
+
+		this.useFullArray();
+		this.ensureUpdate();
+		if (grid.k == this.k && grid.y != null) {
+			GridKernels.div(this.y, grid.y, offset, start, end);
+		} else if (grid.k == this.k && grid.yw != null) {
+			GridKernels.div(this.y, grid.yw, offset - grid.windowStart, start,
+					end);
 		} else {
-			offset /= (1 << this.k);
-		}
-
-		for (int i = 0; i < this.n; i++) {
-			double y = grid.y[i];
-			if (y != 0) {
-				this.y[i] /= y;
+			for (int i = start; i < end; i++) {
+				double y = grid.y(i + offset, this.k);
+				if (y != 0) {
+					this.y[i] /= y;
+				}
 			}
 		}
 	}
 
 	/** Inverts all the ordinate values of this grid. */
 	public void invert() {
-		for (int i = 0; i < this.n; i++) {
-			if (this.y[i] != 0) {
-				this.y[i] = 1.0 / (this.y[i]);
-			}
-		}
+		this.useFullArray();
+		this.ensureUpdate();
+		GridKernels.invert(this.y, 0, this.n);
 		return;
 	}
 
@@ -1080,6 +2153,8 @@ public class Grid {
 	 *            the power
 	 */
 	public void power(double s) {
+		this.useFullArray();
+		this.ensureUpdate();
 		for (int i = 0; i < this.n; i++) {
 			this.y[i] = Math.pow(this.y[i], s);
 		}
@@ -1092,14 +2167,76 @@ public class Grid {
 	 *            the base which is raised by the ordinate values
 	 */
 	public void raise(double base) {
+		this.useFullArray();
+		this.ensureUpdate();
 		for (int i = 0; i < this.n; i++) {
 			this.y[i] = Math.pow(base, this.y[i]);
 		}
 	}
 
-	/** Ensures that the second derivatives will be updated. */
-	protected void ensureUpdate() {
+	/**
+	 * Ensures that the second derivatives and the pyramid of lower resolution
+	 * levels will be updated. They are released until they are needed again.
+	 * All the methods of this class modifying the ordinate values call this
+	 * method; code changing the public y array directly must call it as well.
+	 */
+	public void ensureUpdate() {
 		dirty = true;
+		fingerprintDirty = true;
+		BufferPool.giveBack(ypp);
+		ypp = null;
+		pyramid = null;
+	}
+
+	/**
+	 * Returns a 64-bit fingerprint of the content of this grid, i.e. of its
+	 * starting value, resolution, range and ordinate values. Grids with the
+	 * same content have the same fingerprint, irrespective of how their
+	 * ordinate values are stored; grids with different content have different
+	 * fingerprints, except for an extremely unlikely collision. Hence the
+	 * fingerprint may be used as the key for memoizing results computed from
+	 * a grid.
+	 * <p>
+	 * The fingerprint is computed when it is first needed and kept until the
+	 * ordinate values change, which is recorded by ensureUpdate() along with
+	 * the dirty bit of the second derivatives. Asking for the fingerprint of
+	 * an unchanged grid again is thus for free, whereas after any change it is
+	 * recomputed from scratch, which takes a full pass over the ordinate
+	 * values; it is not updated incrementally. As for the second derivatives,
+	 * code changing the public y array directly must call ensureUpdate().
+	 * 
+	 * @return the content fingerprint
+	 */
+	public long fingerprint() {
+		if (fingerprintDirty) {
+			boolean empty = y == null && yw == null && ym == null;
+			long h = mix(0x9E3779B97F4A7C15L ^ j);
+			h = mix(h ^ k);
+			h = mix(h ^ m);
+			for (int i = 0; i < n; i++) {
+				// adding 0 turns -0.0 into 0.0, so that both are considered
+				// equal
+				double value = empty ? 0 : value(i) + 0.0;
+				h = mix(h ^ Double.doubleToLongBits(value));
+			}
+			fingerprint = h;
+			fingerprintDirty = false;
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Scrambles the bits of the given value, so that every input bit affects
+	 * every output bit (the finalizer of the SplitMix64 generator).
+	 * 
+	 * @param z
+	 *            the value
+	 * @return the scrambled value
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
 	}
 
 	/**
@@ -1114,7 +2251,7 @@ public class Grid {
 		try {
 			for (int i = 0; i < this.n; i++) {
 
-				String s = String.format ("% 7.2f  % 7.2f \n", this.x(i), this.y[i]);
+				String s = String.format ("% 7.2f  % 7.2f \n", this.x(i), this.value(i));
 				outputStream.write(s.getBytes());
 			}
 		} catch (IOException e) {
@@ -1122,6 +2259,313 @@ public class Grid {
 		}
 	}
 
+	/**
+	 * Writes the grid in the binary format read by map(File) and
+	 * readBinary(InputStream), without recording a source.
+	 * 
+	 * @param outputStream
+	 *            the output stream
+	 * @throws IOException
+	 *             if the data cannot be written
+	 */
+	public void writeBinary(OutputStream outputStream) throws IOException {
+		this.writeBinary(outputStream, -1, 0);
+	}
+
+	/**
+	 * Writes the grid in the binary format read by map(File) and
+	 * readBinary(InputStream). The file starts with a header of six ints,
+	 * namely BINARY_MAGIC, the binary logarithms j, k and m of the starting
+	 * value, resolution and range, and the index of the first bin and the
+	 * number of bins of the support window, i.e. of the range from the first
+	 * to the last non-zero ordinate value, followed by two longs, namely the
+	 * length and the checksum of the source the grid was read from. The
+	 * ordinate values of the support window follow as doubles; all the other
+	 * bins are 0. All numbers are little-endian, which is the native byte
+	 * order of the usual platforms, so that mapped values can be read without
+	 * swapping bytes.
+	 * 
+	 * @param outputStream
+	 *            the output stream
+	 * @param sourceLength
+	 *            the length (in bytes) of the source, or -1 if there is none
+	 * @param sourceChecksum
+	 *            the checksum of the source (see GridResource.checksum())
+	 * @throws IOException
+	 *             if the data cannot be written
+	 */
+	public void writeBinary(OutputStream outputStream, long sourceLength,
+			long sourceChecksum) throws IOException {
+		int start = 0;
+		while (start < this.n && this.value(start) == 0) {
+			start++;
+		}
+		int end = this.n;
+		while (end > start && this.value(end - 1) == 0) {
+			end--;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(8192).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(BINARY_MAGIC);
+		buffer.putInt(this.j);
+		buffer.putInt(this.k);
+		buffer.putInt(this.m);
+		buffer.putInt(start);
+		buffer.putInt(end - start);
+		buffer.putLong(sourceLength);
+		buffer.putLong(sourceChecksum);
+		for (int i = start; i < end; i++) {
+			if (buffer.remaining() < 8) {
+				outputStream.write(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			buffer.putDouble(this.value(i));
+		}
+		outputStream.write(buffer.array(), 0, buffer.position());
+		outputStream.flush();
+	}
+
+	/**
+	 * Writes the grid to the named file, using the writeBinary(OutputStream,
+	 * long, long) method.
+	 * 
+	 * @param filename
+	 *            the name of the file
+	 * @param sourceLength
+	 *            the length (in bytes) of the source, or -1 if there is none
+	 * @param sourceChecksum
+	 *            the checksum of the source (see GridResource.checksum())
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void writeBinary(String filename, long sourceLength,
+			long sourceChecksum) throws IOException {
+		OutputStream outputStream = new BufferedOutputStream(
+				new FileOutputStream(filename));
+		try {
+			this.writeBinary(outputStream, sourceLength, sourceChecksum);
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	/**
+	 * Maps the given file, which must have been written by
+	 * writeBinary(OutputStream), and uses its ordinate values. The file is
+	 * mapped read-only, so that the values remain outside the heap and are
+	 * shared with any other grid or process mapping the same file through the
+	 * page cache of the operating system. The grid takes the starting value,
+	 * resolution and range given in the file. Methods modifying the ordinate
+	 * values copy them to the heap first, as for useSupportWindow(); the
+	 * file itself is never changed.
+	 * 
+	 * @param file
+	 *            the file
+	 * @throws InvalidValueException
+	 *             if the file cannot be mapped or isn't a valid grid file
+	 */
+	public void map(File file) {
+		this.map(file, -1, 0);
+	}
+
+	/**
+	 * Maps the given file as map(File) does, provided that it has been
+	 * written from the source with the given length and checksum, so that
+	 * binary files which are out of date are rejected.
+	 * 
+	 * @param file
+	 *            the file
+	 * @param sourceLength
+	 *            the length (in bytes) of the source, or -1 if the source
+	 *            isn't checked
+	 * @param sourceChecksum
+	 *            the checksum of the source (see GridResource.checksum())
+	 * @throws InvalidValueException
+	 *             if the file cannot be mapped, isn't a valid grid file or
+	 *             has been written from another source
+	 */
+	public void map(File file, long sourceLength, long sourceChecksum) {
+		try {
+			FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+			try {
+				this.useBinary(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+						channel.size()), file.toString(), sourceLength,
+						sourceChecksum);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			throw new InvalidValueException("The file " + file
+					+ " couldn't be mapped: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the binary format written by writeBinary(OutputStream) from the
+	 * given input stream, which is closed afterwards. This is meant for
+	 * streams which cannot be mapped, such as resources inside a jar file;
+	 * otherwise map(File) should be preferred. As for map(File), the grid
+	 * takes the geometry given in the data, and the values are held in a
+	 * read-only buffer outside the heap until the grid is changed.
+	 * 
+	 * @param inputStream
+	 *            the input stream
+	 * @throws InvalidValueException
+	 *             if the stream cannot be read or doesn't contain valid grid
+	 *             data
+	 */
+	public void readBinary(InputStream inputStream) {
+		this.readBinary(inputStream, -1, 0);
+	}
+
+	/**
+	 * Reads the binary format as readBinary(InputStream) does, provided that
+	 * the data have been written from the source with the given length and
+	 * checksum.
+	 * 
+	 * @param inputStream
+	 *            the input stream
+	 * @param sourceLength
+	 *            the length (in bytes) of the source, or -1 if the source
+	 *            isn't checked
+	 * @param sourceChecksum
+	 *            the checksum of the source (see GridResource.checksum())
+	 * @throws InvalidValueException
+	 *             if the stream cannot be read, doesn't contain valid grid
+	 *             data or the data have been written from another source
+	 */
+	public void readBinary(InputStream inputStream, long sourceLength,
+			long sourceChecksum) {
+		try {
+			ReadableByteChannel channel = Channels.newChannel(inputStream);
+			try {
+				ByteBuffer header = ByteBuffer.allocate(BINARY_HEADER_LENGTH)
+						.order(ByteOrder.LITTLE_ENDIAN);
+				Grid.fill(channel, header);
+				if (header.hasRemaining()
+						|| header.getInt(0) != BINARY_MAGIC) {
+					throw new InvalidValueException(
+							"The stream contains no binary grid data.");
+				}
+				int length = header.getInt(20);
+				if (length < 0 || length > 1 << MAX_BINARY_LB_BINS) {
+					throw new InvalidValueException("The stream has an "
+							+ "invalid length for its grid geometry.");
+				}
+
+				// The data are read into a direct buffer, so that the values
+				// remain outside the heap, just as for a mapped file.
+				ByteBuffer buffer = ByteBuffer
+						.allocateDirect(BINARY_HEADER_LENGTH + 8 * length);
+				header.flip();
+				buffer.put(header);
+				Grid.fill(channel, buffer);
+				if (buffer.hasRemaining()
+						|| channel.read(ByteBuffer.allocate(1)) != -1) {
+					throw new InvalidValueException("The stream has an "
+							+ "invalid length for its grid geometry.");
+				}
+				this.useBinary(buffer, "stream", sourceLength,
+						sourceChecksum);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			throw new InvalidValueException(
+					"The binary grid data couldn't be read: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads from the given channel until the given buffer is full or the end
+	 * of the channel is reached.
+	 * 
+	 * @param channel
+	 *            the channel
+	 * @param buffer
+	 *            the buffer
+	 * @throws IOException
+	 *             if the channel cannot be read
+	 */
+	private static void fill(ReadableByteChannel channel, ByteBuffer buffer)
+			throws IOException {
+		while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+			// keep on reading
+		}
+	}
+
+	/**
+	 * Validates the given binary grid data and uses them as the ordinate
+	 * values of this grid, without copying them.
+	 * 
+	 * @param buffer
+	 *            the data, as written by writeBinary(OutputStream)
+	 * @param source
+	 *            the source of the data, for error messages
+	 * @param sourceLength
+	 *            the length (in bytes) of the source the data must have been
+	 *            written from, or -1 if the source isn't checked
+	 * @param sourceChecksum
+	 *            the checksum of that source
+	 * @throws InvalidValueException
+	 *             if the data aren't valid grid data or have been written
+	 *             from another source
+	 */
+	private void useBinary(ByteBuffer buffer, String source,
+			long sourceLength, long sourceChecksum) {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < BINARY_HEADER_LENGTH
+				|| buffer.getInt(0) != BINARY_MAGIC) {
+			throw new InvalidValueException("The " + source
+					+ " contains no binary grid data.");
+		}
+		int j = buffer.getInt(4);
+		int k = buffer.getInt(8);
+		int m = buffer.getInt(12);
+		int start = buffer.getInt(16);
+		int length = buffer.getInt(20);
+		long lbBins = (long) m - k;
+		if (lbBins < 0 || lbBins > MAX_BINARY_LB_BINS || start < 0
+				|| length < 0 || (long) start + length > (1L << lbBins)
+				|| buffer.capacity() != BINARY_HEADER_LENGTH + 8L * length) {
+			throw new InvalidValueException("The " + source
+					+ " has an invalid length for its grid geometry.");
+		}
+		if (sourceLength >= 0
+				&& (buffer.getLong(24) != sourceLength
+						|| buffer.getLong(32) != sourceChecksum)) {
+			throw new InvalidValueException("The " + source
+					+ " is out of date with respect to its source.");
+		}
+		buffer.position(BINARY_HEADER_LENGTH);
+		DoubleBuffer values = buffer.slice().order(ByteOrder.LITTLE_ENDIAN)
+				.asDoubleBuffer().asReadOnlyBuffer();
+
+		// the geometry is set directly, as reset(int, int, int) would allocate
+		// an array for the ordinate values
+		this.j = j;
+		this.k = k;
+		this.m = m;
+		this.n = 1 << (m - k);
+		this.releaseY();
+		this.y = null;
+		this.yw = null;
+		this.ym = values;
+		this.windowStart = start;
+		this.ensureUpdate();
+	}
+
+	/**
+	 * States whether the ordinate values are held in a read-only buffer, i.e.
+	 * in a mapped file (see map(File)) or in a snapshot (see
+	 * reset(GridSnapshot)).
+	 * 
+	 * @return true if the ordinate values are held in a read-only buffer
+	 */
+	public boolean isMapped() {
+		return this.ym != null;
+	}
+
 	/**
 	 * Writes the grid values to the named file, using the write(OutputStream)
 	 * method.
@@ -0,0 +1,490 @@
+package za.ac.salt.pipt.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits grid data read from an input stream into lines and tokens and parses
+ * numbers, working on the bytes of a single buffer. Unlike reading lines with
+ * a BufferedReader and splitting them with a StringTokenizer, this creates no
+ * objects per line or token, so that reading large files is much faster.
+ * <p>
+ * Lines end with a line feed, a carriage return or a carriage return followed
+ * by a line feed, and tokens are separated by the same whitespace characters
+ * as for a StringTokenizer (space, tab and form feed). The current line is
+ * kept in the buffer, which grows if a line doesn't fit into it, until the
+ * next line is requested. Hence tokens are referred to by their start and end
+ * index in the buffer, and they may be parsed in any order.
+ * <p>
+ * Numbers are parsed exactly like Double.parseDouble(String) does. Decimal
+ * numbers with at most 15 or so significant digits and a small decimal
+ * exponent are converted directly, as both the digits and the power of ten
+ * are exactly representable as doubles, so that a single correctly rounded
+ * multiplication or division yields the correctly rounded result. Other
+ * decimal numbers with up to 18 significant digits are converted with the
+ * algorithm by Eisel and Lemire (D. Lemire, "Number parsing at a gigabyte per
+ * second", Software: Practice and Experience 51, 2021), which multiplies the
+ * digits by a 128-bit approximation of the power of ten and gives up in the
+ * rare cases where this doesn't determine the correctly rounded result. All
+ * remaining tokens (including invalid ones) are converted to a string and
+ * handed to Double.parseDouble(String), so that the results and error
+ * messages are the same as before.
+ */
+class GridDataParser {
+	/** the initial size of the buffer (in bytes) */
+	private static final int BUFFER_SIZE = 16384;
+
+	/** the largest mantissa for which all smaller integers are exact doubles */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	/** the powers of ten which are exactly representable as doubles */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/** the smallest decimal exponent converted by the Eisel-Lemire algorithm */
+	private static final int SMALLEST_POWER = -342;
+
+	/** the largest decimal exponent converted by the Eisel-Lemire algorithm */
+	private static final int LARGEST_POWER = 308;
+
+	/**
+	 * the upper 64 bits of the normalized 128-bit approximations of the powers
+	 * of five from SMALLEST_POWER to LARGEST_POWER
+	 */
+	private static final long[] POWERS_OF_FIVE_HIGH = new long[LARGEST_POWER
+			- SMALLEST_POWER + 1];
+
+	/**
+	 * the lower 64 bits of the normalized 128-bit approximations of the powers
+	 * of five from SMALLEST_POWER to LARGEST_POWER
+	 */
+	private static final long[] POWERS_OF_FIVE_LOW = new long[LARGEST_POWER
+			- SMALLEST_POWER + 1];
+
+	static {
+		// positive powers are truncated, negative ones rounded up
+		BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+		for (int q = SMALLEST_POWER; q <= LARGEST_POWER; q++) {
+			BigInteger c;
+			if (q >= 0) {
+				BigInteger power5 = BigInteger.valueOf(5).pow(q);
+				int length = power5.bitLength();
+				c = length <= 128 ? power5.shiftLeft(128 - length) : power5
+						.shiftRight(length - 128);
+			} else {
+				BigInteger power5 = BigInteger.valueOf(5).pow(-q);
+				int z = power5.subtract(BigInteger.ONE).bitLength();
+				int b = q >= -27 ? z + 127 : 2 * z + 128;
+				c = BigInteger.ONE.shiftLeft(b).divide(power5).add(
+						BigInteger.ONE);
+				if (c.compareTo(two128) >= 0) {
+					c = c.shiftRight(c.bitLength() - 128);
+				}
+			}
+			POWERS_OF_FIVE_HIGH[q - SMALLEST_POWER] = c.shiftRight(64)
+					.longValue();
+			POWERS_OF_FIVE_LOW[q - SMALLEST_POWER] = c.longValue();
+		}
+	}
+
+	/** the input stream */
+	private final InputStream inputStream;
+
+	/** the buffer */
+	private byte[] buffer;
+
+	/** the number of valid bytes in the buffer */
+	private int count;
+
+	/** the index of the first byte after the current line and its ending */
+	private int position;
+
+	/** the index of the first byte of the current line */
+	private int lineStart;
+
+	/** the index of the first byte after the current line */
+	private int lineEnd;
+
+	/** the index from which the next token is looked for */
+	private int scan;
+
+	/** the index of the first byte of the current token */
+	private int tokenStart;
+
+	/** the index of the first byte after the current token */
+	private int tokenEnd;
+
+	/** states whether a line feed after a carriage return must be skipped */
+	private boolean skipLineFeed;
+
+	/** states whether the end of the stream has been reached */
+	private boolean endOfStream;
+
+	/**
+	 * Creates a parser for the given input stream. The stream isn't closed by
+	 * the parser.
+	 *
+	 * @param inputStream
+	 *            the input stream
+	 */
+	GridDataParser(InputStream inputStream) {
+		this.inputStream = inputStream;
+		this.buffer = new byte[BUFFER_SIZE];
+		this.count = 0;
+		this.position = 0;
+		this.skipLineFeed = false;
+		this.endOfStream = false;
+	}
+
+	/**
+	 * Moves to the next line. If there is no more line, false is returned. As
+	 * for BufferedReader.readLine(), there is no empty line after the last line
+	 * ending.
+	 *
+	 * @return true if there is a next line
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 */
+	boolean nextLine() throws IOException {
+		if (this.skipLineFeed) {
+			if (this.position == this.count && !this.endOfStream) {
+				this.fill();
+			}
+			if (this.position < this.count
+					&& this.buffer[this.position] == '\n') {
+				this.position++;
+			}
+			this.skipLineFeed = false;
+		}
+		int i = this.position;
+		while (true) {
+			while (i < this.count) {
+				byte b = this.buffer[i];
+				if (b == '\n' || b == '\r') {
+					this.startLine(i);
+					this.position = i + 1;
+					this.skipLineFeed = b == '\r';
+					return true;
+				}
+				i++;
+			}
+			if (this.endOfStream) {
+				if (i == this.position) {
+					return false;
+				}
+				this.startLine(i);
+				this.position = i;
+				return true;
+			}
+			int scanned = i - this.position;
+			this.fill();
+			i = this.position + scanned;
+		}
+	}
+
+	/**
+	 * Moves to the next token of the current line. If there is no more token,
+	 * false is returned.
+	 *
+	 * @return true if there is a next token
+	 */
+	boolean nextToken() {
+		int i = this.scan;
+		while (i < this.lineEnd && isDelimiter(this.buffer[i])) {
+			i++;
+		}
+		if (i == this.lineEnd) {
+			this.scan = i;
+			return false;
+		}
+		this.tokenStart = i;
+		while (i < this.lineEnd && !isDelimiter(this.buffer[i])) {
+			i++;
+		}
+		this.tokenEnd = i;
+		this.scan = i;
+		return true;
+	}
+
+	/**
+	 * Returns the index of the first byte of the current token.
+	 *
+	 * @return the index of the first byte of the current token
+	 */
+	int tokenStart() {
+		return this.tokenStart;
+	}
+
+	/**
+	 * Returns the index of the first byte after the current token.
+	 *
+	 * @return the index of the first byte after the current token
+	 */
+	int tokenEnd() {
+		return this.tokenEnd;
+	}
+
+	/**
+	 * Returns the first character of the current token.
+	 *
+	 * @return the first character of the current token
+	 */
+	char firstCharacter() {
+		return (char) (this.buffer[this.tokenStart] & 0xff);
+	}
+
+	/**
+	 * Parses the number between the given indices of the current line, which
+	 * usually are those of a token, in the same way as
+	 * Double.parseDouble(String).
+	 *
+	 * @param start
+	 *            the index of the first byte of the number
+	 * @param end
+	 *            the index of the first byte after the number
+	 * @return the number
+	 * @throws NumberFormatException
+	 *             if the bytes contain no valid number
+	 */
+	double parseDouble(int start, int end) {
+		byte[] b = this.buffer;
+		int i = start;
+		boolean negative = false;
+		if (i < end && (b[i] == '-' || b[i] == '+')) {
+			negative = b[i] == '-';
+			i++;
+		}
+
+		// the significant digits, without leading zeros
+		long mantissa = 0;
+		int digits = 0;
+		boolean anyDigit = false;
+		int scale = 0;
+		while (i < end && b[i] >= '0' && b[i] <= '9') {
+			if (mantissa != 0 || b[i] != '0') {
+				if (++digits > 18) {
+					return this.parseString(start, end);
+				}
+				mantissa = 10 * mantissa + (b[i] - '0');
+			}
+			anyDigit = true;
+			i++;
+		}
+		if (i < end && b[i] == '.') {
+			i++;
+			while (i < end && b[i] >= '0' && b[i] <= '9') {
+				if (mantissa != 0 || b[i] != '0') {
+					if (++digits > 18) {
+						return this.parseString(start, end);
+					}
+					mantissa = 10 * mantissa + (b[i] - '0');
+				}
+				scale--;
+				anyDigit = true;
+				i++;
+			}
+		}
+		if (!anyDigit) {
+			return this.parseString(start, end);
+		}
+
+		// the exponent
+		int exponent = 0;
+		if (i < end && (b[i] == 'e' || b[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (b[i] == '-' || b[i] == '+')) {
+				negativeExponent = b[i] == '-';
+				i++;
+			}
+			if (i == end) {
+				return this.parseString(start, end);
+			}
+			while (i < end && b[i] >= '0' && b[i] <= '9') {
+				if (exponent > 9999) {
+					return this.parseString(start, end);
+				}
+				exponent = 10 * exponent + (b[i] - '0');
+				i++;
+			}
+			if (negativeExponent) {
+				exponent = -exponent;
+			}
+		}
+
+		// anything else (such as a type suffix) is left to the slow path
+		if (i != end) {
+			return this.parseString(start, end);
+		}
+		if (mantissa == 0) {
+			return negative ? -0.0 : 0.0;
+		}
+		int exponent10 = scale + exponent;
+		if (mantissa <= MAX_EXACT_MANTISSA && exponent10 >= -22
+				&& exponent10 <= 22) {
+			double value = exponent10 >= 0 ? mantissa
+					* POWERS_OF_TEN[exponent10] : mantissa
+					/ POWERS_OF_TEN[-exponent10];
+			return negative ? -value : value;
+		}
+		if (exponent10 >= SMALLEST_POWER && exponent10 <= LARGEST_POWER) {
+			double value = eiselLemire(mantissa, exponent10, negative);
+			if (!Double.isNaN(value)) {
+				return value;
+			}
+		}
+		return this.parseString(start, end);
+	}
+
+	/**
+	 * Converts the given decimal significand and exponent into the nearest
+	 * double by means of the Eisel-Lemire algorithm. If the algorithm cannot
+	 * decide on the correct rounding, or if the result is subnormal or
+	 * infinite, NaN is returned.
+	 *
+	 * @param mantissa
+	 *            the (positive) decimal significand
+	 * @param exponent10
+	 *            the decimal exponent, between SMALLEST_POWER and
+	 *            LARGEST_POWER
+	 * @param negative
+	 *            states whether the number is negative
+	 * @return the double, or NaN
+	 */
+	private static double eiselLemire(long mantissa, int exponent10,
+			boolean negative) {
+		int index = exponent10 - SMALLEST_POWER;
+		long factor = POWERS_OF_FIVE_HIGH[index];
+		long exponent = (((152170L + 65536L) * exponent10) >> 16) + 1024 + 63;
+		int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+		long shifted = mantissa << leadingZeros;
+		long lower = shifted * factor;
+		long upper = unsignedMultiplyHigh(shifted, factor);
+		if ((upper & 0x1FF) == 0x1FF
+				&& Long.compareUnsigned(lower + shifted, lower) < 0) {
+			// the lower bits of the power matter
+			long factorLow = POWERS_OF_FIVE_LOW[index];
+			long productLow = shifted * factorLow;
+			long productMiddle = lower + unsignedMultiplyHigh(shifted,
+					factorLow);
+			long productHigh = upper;
+			if (Long.compareUnsigned(productMiddle, lower) < 0) {
+				productHigh++;
+			}
+			if (productMiddle + 1 == 0 && (productHigh & 0x1FF) == 0x1FF
+					&& Long.compareUnsigned(productLow + shifted, productLow) < 0) {
+				return Double.NaN;
+			}
+			upper = productHigh;
+			lower = productMiddle;
+		}
+		long upperBit = upper >>> 63;
+		long significand = upper >>> (upperBit + 9);
+		leadingZeros += (int) (1 ^ upperBit);
+		if (lower == 0 && (upper & 0x1FF) == 0 && (significand & 3) == 1) {
+			// possibly halfway between two doubles
+			return Double.NaN;
+		}
+		significand += significand & 1;
+		significand >>>= 1;
+		if (significand >= (1L << 53)) {
+			significand = 1L << 52;
+			leadingZeros--;
+		}
+		significand &= ~(1L << 52);
+		long biasedExponent = exponent - leadingZeros;
+		if (biasedExponent < 1 || biasedExponent > 2046) {
+			return Double.NaN;
+		}
+		long bits = significand | biasedExponent << 52
+				| (negative ? 1L << 63 : 0);
+		return Double.longBitsToDouble(bits);
+	}
+
+	/**
+	 * Returns the upper 64 bits of the unsigned 128-bit product of the given
+	 * values, which are treated as unsigned.
+	 *
+	 * @param a
+	 *            the first factor
+	 * @param b
+	 *            the second factor
+	 * @return the upper 64 bits of the product
+	 */
+	private static long unsignedMultiplyHigh(long a, long b) {
+		return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+	}
+
+	/**
+	 * Parses the number between the given indices by converting the bytes into
+	 * a string (using the platform's default charset, as an InputStreamReader
+	 * does) and using Double.parseDouble(String).
+	 *
+	 * @param start
+	 *            the index of the first byte of the number
+	 * @param end
+	 *            the index of the first byte after the number
+	 * @return the number
+	 * @throws NumberFormatException
+	 *             if the bytes contain no valid number
+	 */
+	private double parseString(int start, int end) {
+		return Double.parseDouble(new String(this.buffer, start, end - start,
+				Charset.defaultCharset()));
+	}
+
+	/**
+	 * Makes the bytes from the current position up to the given index the
+	 * current line.
+	 *
+	 * @param end
+	 *            the index of the first byte after the line
+	 */
+	private void startLine(int end) {
+		this.lineStart = this.position;
+		this.lineEnd = end;
+		this.scan = this.lineStart;
+	}
+
+	/**
+	 * Moves the unread bytes to the beginning of the buffer, grows the buffer
+	 * if it is full, and reads more bytes from the stream. If the end of the
+	 * stream is reached, this is recorded.
+	 *
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 */
+	private void fill() throws IOException {
+		int unread = this.count - this.position;
+		if (this.position > 0) {
+			System.arraycopy(this.buffer, this.position, this.buffer, 0, unread);
+			this.position = 0;
+			this.count = unread;
+		}
+		if (this.count == this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, 2 * this.buffer.length);
+		}
+		int read = this.inputStream.read(this.buffer, this.count,
+				this.buffer.length - this.count);
+		if (read < 0) {
+			this.endOfStream = true;
+		} else {
+			this.count += read;
+		}
+	}
+
+	/**
+	 * States whether the given byte separates tokens.
+	 *
+	 * @param b
+	 *            the byte
+	 * @return true if the byte separates tokens
+	 */
+	private static boolean isDelimiter(byte b) {
+		return b == ' ' || b == '\t' || b == '\f';
+	}
+}
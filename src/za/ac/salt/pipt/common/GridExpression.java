@@ -0,0 +1,253 @@
+package za.ac.salt.pipt.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import za.ac.salt.pipt.common.dataExchange.InvalidValueException;
+
+/**
+ * A chain of operations on the ordinate values of a grid, which is recorded
+ * first and carried out later in a single pass. Rather than passing over the
+ * whole grid once for each operation, the grid is processed in blocks small
+ * enough to remain in the processor cache, and all the operations are applied
+ * to a block before moving on to the next one. No intermediate grids are
+ * created.
+ * <p>
+ * For example,
+ *
+ * <pre>
+ * double[] integrals = new GridExpression(spectrum).scale(filter).integrate()
+ * 		.quantize().integrate().evaluate(spectrum);
+ * </pre>
+ *
+ * has the same effect as calling spectrum.scale(filter),
+ * spectrum.integrate(), spectrum.quantize() and spectrum.integrate(), but
+ * reads and writes the spectrum only once.
+ */
+public class GridExpression {
+	/**
+	 * the number of bins processed at a time, which must be a power of 2 times
+	 * Summation.LEAF_SIZE
+	 */
+	private static final int BLOCK_SIZE = 2048;
+
+	/** the grid providing the initial values */
+	private Grid source;
+
+	/** the recorded operations */
+	private List<Operation> operations;
+
+	/** the number of recorded integrations */
+	private int integrations;
+
+	/**
+	 * Creates an expression starting with the ordinate values of the given
+	 * grid. The grid isn't changed unless it is passed to evaluate(Grid).
+	 *
+	 * @param source
+	 *            the grid providing the initial values
+	 */
+	public GridExpression(Grid source) {
+		this.source = source;
+		this.operations = new ArrayList<Operation>();
+		this.integrations = 0;
+	}
+
+	/**
+	 * Records that the values are multiplied by the given factor.
+	 *
+	 * @param scalingFactor
+	 *            the factor
+	 * @return this expression
+	 */
+	public GridExpression scale(final double scalingFactor) {
+		this.operations.add(new Operation() {
+			public void apply(double[] block, int first, int length,
+					double[][] sums) {
+				GridKernels.scale(block, 0, length, scalingFactor);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Records that the values are multiplied by the ordinate values of the
+	 * given grid, as Grid.scale(Grid) would do it.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @return this expression
+	 */
+	public GridExpression scale(final Grid grid) {
+		final int offset = this.source.offset(grid);
+		final int lbResolution = this.source.k();
+		this.operations.add(new Operation() {
+			public void apply(double[] block, int first, int length,
+					double[][] sums) {
+				grid.multiply(block, first, first, first + length,
+						lbResolution, offset);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Records that the given value is added to the values.
+	 *
+	 * @param addedValue
+	 *            the value
+	 * @return this expression
+	 */
+	public GridExpression add(final double addedValue) {
+		this.operations.add(new Operation() {
+			public void apply(double[] block, int first, int length,
+					double[][] sums) {
+				GridKernels.add(block, 0, length, addedValue);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Records that the ordinate values of the given grid are added to the
+	 * values, as Grid.add(Grid) would do it.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @return this expression
+	 */
+	public GridExpression add(final Grid grid) {
+		final int offset = this.source.offset(grid);
+		final int lbResolution = this.source.k();
+		this.operations.add(new Operation() {
+			public void apply(double[] block, int first, int length,
+					double[][] sums) {
+				grid.addTo(block, first, first, first + length, lbResolution,
+						offset);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Records that the values are converted from energies to numbers of
+	 * photons, as GenericSpectrum.quantize() would do it.
+	 *
+	 * @return this expression
+	 */
+	public GridExpression quantize() {
+		final double x0 = this.source.x0();
+		final double dx = this.source.dx();
+		this.operations.add(new Operation() {
+			public void apply(double[] block, int first, int length,
+					double[][] sums) {
+				GridKernels.scaleByAbscissa(block, length, x0 + first * dx, dx,
+						GenericSpectrum.HC);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Records that the values are integrated, as GenericSpectrum.integrate()
+	 * would do it. The integrals are returned by the evaluate methods, in the
+	 * order in which they have been recorded. The sum of each block is kept
+	 * and the block sums are combined as Summation combines the halves of a
+	 * range, so that the result equals that of GenericSpectrum.integrate().
+	 *
+	 * @return this expression
+	 */
+	public GridExpression integrate() {
+		final int index = this.integrations++;
+		this.operations.add(new Operation() {
+			public void apply(double[] block, int first, int length,
+					double[][] sums) {
+				sums[index][first / BLOCK_SIZE] = Summation.sum(block, 0, length);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Carries out the recorded operations without storing the resulting
+	 * values. The source grid remains unchanged.
+	 *
+	 * @return the recorded integrals
+	 */
+	public double[] evaluate() {
+		return this.evaluate(null);
+	}
+
+	/**
+	 * Carries out the recorded operations and stores the resulting values in
+	 * the given grid, which may be the source grid itself. If the given grid
+	 * is null, the resulting values are discarded.
+	 *
+	 * @param destination
+	 *            the grid for the results
+	 * @return the recorded integrals
+	 * @throws InvalidValueException
+	 *             if the given grid doesn't have the same abscissa values as
+	 *             the source grid
+	 */
+	public double[] evaluate(Grid destination) {
+		int n = this.source.n();
+		if (destination != null) {
+			if (destination.x0() != this.source.x0()
+					|| destination.k() != this.source.k()
+					|| destination.n() != n) {
+				throw new InvalidValueException(
+						"The destination grid doesn't match the source grid.");
+			}
+			destination.useFullArray();
+			destination.ensureUpdate();
+		}
+
+		int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		double[][] blockSums = new double[this.integrations][blocks];
+		double[] block = new double[BLOCK_SIZE];
+		for (int first = 0; first < n; first += BLOCK_SIZE) {
+			int length = Math.min(BLOCK_SIZE, n - first);
+			if (this.source.y != null) {
+				System.arraycopy(this.source.y, first, block, 0, length);
+			} else {
+				for (int i = 0; i < length; i++) {
+					block[i] = this.source.y(first + i);
+				}
+			}
+			for (int i = 0; i < this.operations.size(); i++) {
+				this.operations.get(i).apply(block, first, length, blockSums);
+			}
+			if (destination != null) {
+				System.arraycopy(block, 0, destination.y, first, length);
+			}
+		}
+
+		// equal size bins come out of the integrals
+		double[] sums = new double[this.integrations];
+		for (int i = 0; i < sums.length; i++) {
+			sums[i] = Summation.combine(blockSums[i], 0, blocks)
+					* this.source.dx();
+		}
+		return sums;
+	}
+
+	/** An operation applied to a block of values. */
+	private interface Operation {
+		/**
+		 * Applies this operation to a block of values.
+		 *
+		 * @param block
+		 *            the values
+		 * @param first
+		 *            the bin corresponding to the first value
+		 * @param length
+		 *            the number of values
+		 * @param sums
+		 *            the block sums of the integrations, indexed by
+		 *            integration and block
+		 */
+		public void apply(double[] block, int first, int length,
+				double[][] sums);
+	}
+}
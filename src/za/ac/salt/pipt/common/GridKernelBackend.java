@@ -0,0 +1,21 @@
+package za.ac.salt.pipt.common;
+
+/**
+ * The interface of an implementation of the elementary loops offered by
+ * GridKernels. See there for a description of the methods and their
+ * parameters. All implementations must give bit-for-bit identical results.
+ */
+interface GridKernelBackend {
+
+	void add(double[] y, int start, int end, double addedValue);
+
+	void add(double[] y, double[] z, int offset, int start, int end);
+
+	void scale(double[] y, int start, int end, double factor);
+
+	void scale(double[] y, double[] z, int offset, int start, int end);
+
+	void div(double[] y, double[] z, int offset, int start, int end);
+
+	void invert(double[] y, int start, int end);
+}
@@ -0,0 +1,186 @@
+package za.ac.salt.pipt.common;
+
+/**
+ * Provides the elementary loops over ordinate arrays used by the grid
+ * arithmetic. The loops for adding, scaling, dividing and inverting are
+ * delegated to a backend. If the Java VM has been started with the option
+ * --add-modules jdk.incubator.vector and the class VectorGridKernels has been
+ * compiled (by the Ant target "vector"), the backend uses the Vector API;
+ * otherwise plain scalar loops are used (see ScalarGridKernels). Both backends
+ * give identical results. The vectorized backend may be disabled by setting
+ * the system property za.ac.salt.pipt.common.GridKernels.vector to false.
+ *
+ * All methods operate on the index range from start (inclusive) to end
+ * (exclusive) of the array they modify. Where a second array is involved, its
+ * index is shifted by the given offset.
+ */
+public final class GridKernels {
+
+	/** the system property for disabling the vectorized backend */
+	public static final String VECTOR_PROPERTY = "za.ac.salt.pipt.common.GridKernels.vector";
+
+	/** the backend used for the loops */
+	private static final GridKernelBackend BACKEND = createBackend();
+
+	/** There are no instances of this class. */
+	private GridKernels() {
+	}
+
+	/**
+	 * States whether the loops are vectorized by means of the Vector API.
+	 *
+	 * @return whether the loops are vectorized
+	 */
+	public static boolean isVectorized() {
+		return !(BACKEND instanceof ScalarGridKernels);
+	}
+
+	/**
+	 * Adds a constant value to the elements of an array.
+	 *
+	 * @param y
+	 *            the array
+	 * @param start
+	 *            the first index
+	 * @param end
+	 *            the index following the last index
+	 * @param addedValue
+	 *            the value to add
+	 */
+	public static void add(double[] y, int start, int end, double addedValue) {
+		BACKEND.add(y, start, end, addedValue);
+	}
+
+	/**
+	 * Adds the elements of an array to those of another array.
+	 *
+	 * @param y
+	 *            the array to which the values are added
+	 * @param z
+	 *            the array whose values are added
+	 * @param offset
+	 *            the index in z corresponding to index 0 in y
+	 * @param start
+	 *            the first index (in y)
+	 * @param end
+	 *            the index (in y) following the last index
+	 */
+	public static void add(double[] y, double[] z, int offset, int start,
+			int end) {
+		BACKEND.add(y, z, offset, start, end);
+	}
+
+	/**
+	 * Multiplies the elements of an array by a constant factor.
+	 *
+	 * @param y
+	 *            the array
+	 * @param start
+	 *            the first index
+	 * @param end
+	 *            the index following the last index
+	 * @param factor
+	 *            the factor
+	 */
+	public static void scale(double[] y, int start, int end, double factor) {
+		BACKEND.scale(y, start, end, factor);
+	}
+
+	/**
+	 * Multiplies the elements of an array by those of another array.
+	 *
+	 * @param y
+	 *            the array which is scaled
+	 * @param z
+	 *            the array containing the factors
+	 * @param offset
+	 *            the index in z corresponding to index 0 in y
+	 * @param start
+	 *            the first index (in y)
+	 * @param end
+	 *            the index (in y) following the last index
+	 */
+	public static void scale(double[] y, double[] z, int offset, int start,
+			int end) {
+		BACKEND.scale(y, z, offset, start, end);
+	}
+
+	/**
+	 * Divides the elements of an array by those of another array. Elements
+	 * for which the divisor is 0 remain unchanged.
+	 *
+	 * @param y
+	 *            the array which is divided
+	 * @param z
+	 *            the array containing the divisors
+	 * @param offset
+	 *            the index in z corresponding to index 0 in y
+	 * @param start
+	 *            the first index (in y)
+	 * @param end
+	 *            the index (in y) following the last index
+	 */
+	public static void div(double[] y, double[] z, int offset, int start,
+			int end) {
+		BACKEND.div(y, z, offset, start, end);
+	}
+
+	/**
+	 * Replaces the elements of an array by their inverse. Elements which are 0
+	 * remain unchanged.
+	 *
+	 * @param y
+	 *            the array
+	 * @param start
+	 *            the first index
+	 * @param end
+	 *            the index following the last index
+	 */
+	public static void invert(double[] y, int start, int end) {
+		BACKEND.invert(y, start, end);
+	}
+
+	/**
+	 * Multiplies the elements of an array by x / divisor, where x = x0 + i dx
+	 * is the abscissa value of the element with index i.
+	 *
+	 * @param y
+	 *            the array
+	 * @param end
+	 *            the index following the last index
+	 * @param x0
+	 *            the abscissa value of index 0
+	 * @param dx
+	 *            the abscissa spacing
+	 * @param divisor
+	 *            the divisor
+	 */
+	public static void scaleByAbscissa(double[] y, int end, double x0,
+			double dx, double divisor) {
+		for (int i = 0; i < end; i++) {
+			y[i] *= (x0 + i * dx) / divisor;
+		}
+	}
+
+	/**
+	 * Creates the backend for the loops. The vectorized backend is loaded by
+	 * reflection, as it cannot be loaded at all if the Vector API is not
+	 * available.
+	 *
+	 * @return the backend
+	 */
+	static GridKernelBackend createBackend() {
+		if (!"false".equals(System.getProperty(VECTOR_PROPERTY))) {
+			try {
+				return (GridKernelBackend) Class.forName(
+						"za.ac.salt.pipt.common.VectorGridKernels")
+						.getDeclaredConstructor().newInstance();
+			} catch (Exception e) {
+				// the class hasn't been compiled
+			} catch (LinkageError e) {
+				// the Vector API isn't available
+			}
+		}
+		return new ScalarGridKernels();
+	}
+}
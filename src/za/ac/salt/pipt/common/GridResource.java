@@ -1,14 +1,26 @@
 package za.ac.salt.pipt.common;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.zip.CRC32;
+
+import za.ac.salt.pipt.common.dataExchange.InvalidValueException;
 
 
 /** A class to find and open a file resource for Grid data. */
 public class GridResource
 {
+    /** the suffix of the precompiled binary version of a resource for grids other than spectra, such as filters, as created by the build (see GridResourceCompiler) */
+    public static final String BINARY_SUFFIX = ".grid";
+
+    /** the suffix of the precompiled binary version of a resource for spectra, which resample their data differently from other grids */
+    public static final String SPECTRUM_BINARY_SUFFIX = ".spectrum.grid";
+
     /** a website host */
     private String host;
 	
@@ -73,4 +85,85 @@ public class GridResource
 	}
 	return(inputStream);
     }
-}
\ No newline at end of file
+
+
+    /** Returns the suffix of the precompiled binary version of a resource for the given grid. Spectra resample their data by area-preserving rebinning, whereas all other grids interpolate them, so that the binary versions differ.
+     * @param grid the grid
+     * @return the suffix */
+    public static String binarySuffix(Grid grid)
+    {
+	return grid instanceof GenericSpectrum ? SPECTRUM_BINARY_SUFFIX : BINARY_SUFFIX;
+    }
+
+
+    /** Reads the resource into the given grid, which should have the default geometry. If the build has precompiled the resource into the binary grid format for this kind of grid (see GridResourceCompiler), the binary version is used instead of parsing and resampling the text: it is memory-mapped if it is a file, and read otherwise (for example from a jar file). The text isn't read at all then, as the build deletes the binary versions older than their text whenever it copies the resources (see the target "compile" in build.xml), so that a binary version which is found is up to date.
+     * @param grid the grid
+     * @return true if the resource could be found */
+    public boolean read(Grid grid)
+    {
+	URL binaryURL = GridResource.class.getResource(path + binarySuffix(grid));
+	if (binaryURL != null) {
+	    try {
+		if ("file".equals(binaryURL.getProtocol())) {
+		    grid.map(new File(binaryURL.toURI()));
+		} else {
+		    grid.readBinary(binaryURL.openStream());
+		}
+		return true;
+	    } catch (URISyntaxException e) {
+		System.err.println(this.getClass().getName() + ": " + e);
+	    } catch (IOException e) {
+		System.err.println(this.getClass().getName() + ": " + e);
+	    } catch (InvalidValueException e) {
+		// fall back to the text version
+		System.err.println(this.getClass().getName() + ": " + e.getMessage());
+	    }
+	}
+
+	InputStream inputStream = this.getInputStream();
+	if (inputStream == null) {
+	    return false;
+	}
+	try {
+	    grid.read(inputStream);
+	} finally {
+	    try {
+		inputStream.close();
+	    } catch (IOException e) {
+		System.err.println(this.getClass().getName() + ": " + e);
+	    }
+	}
+	return true;
+    }
+
+
+    /** Returns the checksum of the given resource content, which is recorded in its precompiled binary version, so that the binary version can be checked against the text (see Grid.map(File, long, long)). It is the CRC-32 of the content.
+     * @param content the content of the resource
+     * @return the checksum */
+    public static long checksum(byte[] content)
+    {
+	CRC32 crc = new CRC32();
+	crc.update(content, 0, content.length);
+	return crc.getValue();
+    }
+
+
+    /** Reads the given input stream up to its end and closes it.
+     * @param inputStream the input stream
+     * @return the bytes read
+     * @throws IOException if the stream cannot be read */
+    static byte[] readFully(InputStream inputStream) throws IOException
+    {
+	try {
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream(65536);
+	    byte[] chunk = new byte[65536];
+	    int read;
+	    while ((read = inputStream.read(chunk)) > 0) {
+		bytes.write(chunk, 0, read);
+	    }
+	    return bytes.toByteArray();
+	} finally {
+	    inputStream.close();
+	}
+    }
+}
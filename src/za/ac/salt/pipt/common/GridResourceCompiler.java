@@ -0,0 +1,110 @@
+package za.ac.salt.pipt.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import za.ac.salt.pipt.common.dataExchange.InvalidValueException;
+
+/**
+ * Precompiles spectrum and filter resources into the binary grid format (see
+ * Grid.writeBinary(OutputStream)). Each text resource is read and resampled
+ * onto the default grid just as it is at runtime, and the result is written
+ * next to it, with the suffix given by GridResource.binarySuffix(Grid)
+ * appended to its name. As spectra and filters resample their data
+ * differently, each resource must be compiled as the kind of grid it is read
+ * into. The length and checksum of the text are recorded in the binary
+ * version. GridResource.read(Grid) then maps the binary version instead of
+ * parsing and resampling the text. This class is run by the "resources"
+ * target of the Ant build, and the "compile" target deletes the binary
+ * versions whenever it copies a newer text, so that they are never out of
+ * date.
+ */
+public class GridResourceCompiler {
+	/** There are no instances of this class. */
+	private GridResourceCompiler() {
+	}
+
+	/**
+	 * Converts the given resources. The first argument is the root directory,
+	 * and all the other arguments are the paths of the resources relative to
+	 * it. The resources are compiled as filters, unless they follow the option
+	 * -spectrum; the option -filter switches back to filters. Resources which
+	 * don't contain valid grid data are reported and skipped, and any binary
+	 * version left from earlier is deleted. If a resource cannot be read or
+	 * its binary version cannot be written, the remaining resources are still
+	 * compiled, but the program exits with status 1.
+	 *
+	 * @param args
+	 *            the root directory, the options and the paths of the
+	 *            resources
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: GridResourceCompiler root "
+					+ "[-filter|-spectrum|path ...]");
+			System.exit(1);
+		}
+		File root = new File(args[0]);
+		boolean spectra = false;
+		int resources = 0;
+		int converted = 0;
+		int failed = 0;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-filter")) {
+				spectra = false;
+				continue;
+			}
+			if (args[i].equals("-spectrum")) {
+				spectra = true;
+				continue;
+			}
+			resources++;
+			Grid grid = spectra ? new GridSpectrum() : new Filter();
+			File source = new File(root, args[i]);
+			File binary = new File(source.getPath()
+					+ GridResource.binarySuffix(grid));
+			try {
+				compile(grid, source);
+				converted++;
+			} catch (IOException e) {
+				System.err.println("Failed to compile " + args[i] + ": " + e);
+				binary.delete();
+				failed++;
+			} catch (InvalidValueException e) {
+				System.err.println("Skipping " + args[i] + ": "
+						+ e.getMessage());
+				binary.delete();
+			}
+		}
+		System.out.println("Precompiled " + converted + " of " + resources
+				+ " grid resources.");
+		if (failed > 0) {
+			System.err.println(failed + " grid resources failed.");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Reads the given text resource into the given grid, which must have the
+	 * default geometry, and writes it in the binary grid format next to the
+	 * resource, together with the length and checksum of the resource.
+	 *
+	 * @param grid
+	 *            the grid, i.e. a filter or a spectrum
+	 * @param source
+	 *            the text resource
+	 * @throws IOException
+	 *             if the resource cannot be read or the binary version cannot
+	 *             be written
+	 * @throws InvalidValueException
+	 *             if the resource contains no valid grid data
+	 */
+	public static void compile(Grid grid, File source) throws IOException {
+		byte[] content = GridResource.readFully(new FileInputStream(source));
+		grid.read(new ByteArrayInputStream(content));
+		grid.writeBinary(source.getPath() + GridResource.binarySuffix(grid),
+				content.length, GridResource.checksum(content));
+	}
+}
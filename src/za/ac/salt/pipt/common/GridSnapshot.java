@@ -0,0 +1,119 @@
+package za.ac.salt.pipt.common;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * An immutable copy of the abscissa geometry and ordinate values of a grid.
+ * Unlike a grid, a snapshot cannot be changed by anyone, so that it may be
+ * cached and shared between any number of threads without copying.
+ * <p>
+ * A snapshot is turned into a grid by means of toGrid() or
+ * Grid.reset(GridSnapshot). The resulting grid shares the ordinate values of
+ * the snapshot until it is changed for the first time, when it copies them
+ * (copy-on-write). Hence obtaining a grid from a snapshot is cheap, and grids
+ * which are only read never copy any values.
+ */
+public final class GridSnapshot {
+	/** the starting value of the abscissa (as the binary logarithmic value) */
+	private final int j;
+
+	/** the resolution of the abscissa (as the binary logarithmic value) */
+	private final int k;
+
+	/** the overall abscissa range (as the binary logarithmic value) */
+	private final int m;
+
+	/** the ordinate values */
+	private final DoubleBuffer values;
+
+	/**
+	 * Creates a snapshot of the given grid. The ordinate values are copied, so
+	 * that later changes of the grid don't affect the snapshot.
+	 *
+	 * @param grid
+	 *            the grid
+	 */
+	public GridSnapshot(Grid grid) {
+		this.j = grid.j();
+		this.k = grid.k();
+		this.m = grid.m();
+		int n = grid.n();
+		double[] copy = new double[n];
+		for (int i = 0; i < n; i++) {
+			copy[i] = grid.y(i);
+		}
+		this.values = DoubleBuffer.wrap(copy).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns a new grid with the geometry and ordinate values of this
+	 * snapshot. The values are shared until the grid is changed.
+	 *
+	 * @return the grid
+	 */
+	public Grid toGrid() {
+		return new Grid(this);
+	}
+
+	/**
+	 * Returns the starting value of the abscissa as the binary logarithmic
+	 * value.
+	 *
+	 * @return the starting value of the abscissa
+	 */
+	public int j() {
+		return this.j;
+	}
+
+	/**
+	 * Returns the resolution of the abscissa as the binary logarithmic value.
+	 *
+	 * @return the resolution of the abscissa
+	 */
+	public int k() {
+		return this.k;
+	}
+
+	/**
+	 * Returns the overall abscissa range as the binary logarithmic value.
+	 *
+	 * @return the overall abscissa range
+	 */
+	public int m() {
+		return this.m;
+	}
+
+	/**
+	 * Returns the number of bins.
+	 *
+	 * @return the number of bins
+	 */
+	public int n() {
+		return this.values.capacity();
+	}
+
+	/**
+	 * Returns the ordinate value at the given index. If the index is out of
+	 * bounds, 0 is returned instead.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the ordinate value at the given index
+	 */
+	public double y(int index) {
+		if (index < 0 || index >= this.values.capacity()) {
+			return 0;
+		}
+		return this.values.get(index);
+	}
+
+	/**
+	 * Returns the read-only buffer containing the ordinate values, which may
+	 * be shared by grids. Its position and limit must not be changed.
+	 *
+	 * @return the buffer containing the ordinate values
+	 */
+	DoubleBuffer values() {
+		return this.values;
+	}
+}
@@ -6,6 +6,10 @@ import java.net.URL;
 /** This class provides an implementation of the abstract GenericSpectrum methods for a Grid based spectrum. */
 public class GridSpectrum extends GenericSpectrum
 {
+    /** the cumulative sums of the ordinate values (see integrate(double, double)); null if they haven't been computed since the last change */
+    private double[] cumulativeSums;
+
+
     /** Creates a default grid based spectrum. */
     public GridSpectrum()
     {
@@ -57,6 +61,96 @@ public class GridSpectrum extends GenericSpectrum
     }
 
 
+    /** Returns the fluxes at the given wavelengths, using a single pass over the grid for sorted wavelengths.
+     * @param wavelengths the wavelengths (in A)
+     * @param fluxes the array into which the fluxes are written */
+    public void evaluate(double[] wavelengths, double[] fluxes)
+    {
+	interp(wavelengths, fluxes);
+    }
+
+
+    /** Returns this spectrum, as the flux is interpolated from its grid.
+     * @return this spectrum */
+    public GridSpectrum getFluxGrid()
+    {
+	return this;
+    }
+
+
+    /** Returns the integral of this spectrum over the bins with wavelengths w satisfying fromWavelength &lt; w &lt;= toWavelength. On the first call an index of the cumulative sums of the ordinate values is built, so that this and all further calls take constant time until the spectrum is changed. The sums are accumulated with Kahan summation, so that the integral is accurate to a small multiple of the rounding error of the total integral.
+     * @param fromWavelength the wavelength (in A) below which bins are excluded
+     * @param toWavelength the wavelength (in A) above which bins are excluded
+     * @return the integral */
+    public double integrate(double fromWavelength, double toWavelength)
+    {
+	if (cumulativeSums == null) {
+	    int n = n();
+	    double[] sums = new double[n + 1];
+	    double sum = 0;
+	    double compensation = 0;
+	    for (int i = 0; i < n; i++) {
+		double term = y(i) - compensation;
+		double t = sum + term;
+		compensation = (t - sum) - term;
+		sum = t;
+		sums[i + 1] = sum - compensation;
+	    }
+	    cumulativeSums = sums;
+	}
+	int start = firstBinAbove(fromWavelength);
+	int end = firstBinAbove(toWavelength);
+	if (end <= start) {
+	    return 0;
+	}
+	return (cumulativeSums[end] - cumulativeSums[start]) * dx();
+    }
+
+
+    /** Returns the average flux over the bins with wavelengths w satisfying fromWavelength &lt; w &lt;= toWavelength, i.e. the integral over these bins divided by toWavelength - fromWavelength. See integrate(double, double).
+     * @param fromWavelength the wavelength (in A) below which bins are excluded
+     * @param toWavelength the wavelength (in A) above which bins are excluded
+     * @return the average flux */
+    public double averageFlux(double fromWavelength, double toWavelength)
+    {
+	return integrate(fromWavelength, toWavelength) / (toWavelength - fromWavelength);
+    }
+
+
+    /** Returns the index of the first bin whose wavelength exceeds the given one. If there is no such bin, the number of bins is returned.
+     * @param wavelength the wavelength (in A)
+     * @return the index of the first bin with a larger wavelength */
+    private int firstBinAbove(double wavelength)
+    {
+	int n = n();
+	double index = Math.floor((wavelength - x0()) / dx()) + 1;
+	if (index <= 0) {
+	    index = 0;
+	}
+	if (index >= n) {
+	    index = n;
+	}
+	int i = (int) index;
+
+	// guard against rounding
+	while (i > 0 && x(i - 1) > wavelength) {
+	    i--;
+	}
+	while (i < n && x(i) <= wavelength) {
+	    i++;
+	}
+	return i;
+    }
+
+
+    /** Discards the index of cumulative sums, in addition to the data discarded by Grid.ensureUpdate(). */
+    public void ensureUpdate()
+    {
+	super.ensureUpdate();
+	cumulativeSums = null;
+    }
+
+
     /** Returns the string "grid based spectrum".
      * @return the string "grid-based spectrum" */
     public String name()
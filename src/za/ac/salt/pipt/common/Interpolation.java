@@ -0,0 +1,63 @@
+package za.ac.salt.pipt.common;
+
+/**
+ * The standard interpolation kernels for grids. They differ in speed and
+ * accuracy as follows.
+ * <ul>
+ * <li>LINEAR: interpolates linearly between the two neighbouring bins. This is
+ * the fastest kernel, it never overshoots, and it is the best choice for data
+ * with sharp features such as emission or absorption line lists.</li>
+ * <li>LOCAL_CUBIC: interpolates with the cubic (Catmull-Rom) polynomial through
+ * the two bins on either side. It costs a few more operations than the linear
+ * kernel, but again the time required doesn't depend on the size of the grid.
+ * It is accurate for smooth continua, but may overshoot slightly next to sharp
+ * features. This is the default kernel.</li>
+ * <li>SPLINE: interpolates with the natural cubic spline through all the bins.
+ * Its curve is the smoothest (its second derivative is continuous), but
+ * whenever the grid has changed the spline has to be set up for the whole grid
+ * first, and it rings around sharp features.</li>
+ * </ul>
+ * All kernels return the ordinate value of a bin for the abscissa value of
+ * that bin.
+ */
+public enum Interpolation implements InterpolationKernel {
+	LINEAR {
+		public double interp(Grid grid, double xForInterpolation) {
+			return grid.interpLinear(xForInterpolation);
+		}
+	},
+	LOCAL_CUBIC {
+		public double interp(Grid grid, double xForInterpolation) {
+			return grid.interpCubic(xForInterpolation);
+		}
+	},
+	SPLINE {
+		public double interp(Grid grid, double xForInterpolation) {
+			return grid.interpSpline(xForInterpolation);
+		}
+
+		public void interp(Grid grid, double[] xsForInterpolation,
+				double[] interpolated) {
+			grid.interpSpline(xsForInterpolation, interpolated);
+		}
+	};
+
+	/**
+	 * Interpolates the given grid at each of the given abscissa values, one
+	 * abscissa value at a time.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @param xsForInterpolation
+	 *            the abscissa values for which the interpolation is carried out
+	 * @param interpolated
+	 *            the array into which the interpolated values are written; it
+	 *            must be at least as long as the array of abscissa values
+	 */
+	public void interp(Grid grid, double[] xsForInterpolation,
+			double[] interpolated) {
+		for (int i = 0; i < xsForInterpolation.length; i++) {
+			interpolated[i] = this.interp(grid, xsForInterpolation[i]);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package za.ac.salt.pipt.common;
+
+/**
+ * A method of interpolating the ordinate values of a grid. Each grid has an
+ * interpolation kernel (see Grid.setInterpolationKernel()), which is used by
+ * its interp() methods. The standard kernels are provided by the Interpolation
+ * enumeration.
+ */
+public interface InterpolationKernel {
+	/**
+	 * Interpolates the given grid at the given abscissa value.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @param xForInterpolation
+	 *            the abscissa value for which the interpolation is carried out
+	 * @return the interpolated ordinate value
+	 */
+	public double interp(Grid grid, double xForInterpolation);
+
+	/**
+	 * Interpolates the given grid at each of the given abscissa values.
+	 *
+	 * @param grid
+	 *            the grid
+	 * @param xsForInterpolation
+	 *            the abscissa values for which the interpolation is carried out
+	 * @param interpolated
+	 *            the array into which the interpolated values are written; it
+	 *            must be at least as long as the array of abscissa values
+	 */
+	public void interp(Grid grid, double[] xsForInterpolation,
+			double[] interpolated);
+}
@@ -171,6 +171,9 @@ public class JohnsonFilter extends Filter implements SpectrumOperator
 	else {
 	    throw new InvalidValueException("The filter band \"" + band + "\" is unknown.");
 	}
+
+	// the filter vanishes outside its band
+	this.useSupportWindow();
     }
 
 
@@ -211,19 +214,22 @@ public class JohnsonFilter extends Filter implements SpectrumOperator
      * @return the apparent magnitude */
     public double getMagnitude(GenericSpectrum spectrum)
     {
-	double sum_fs = 0;	// sum of filter times spectrum
-	double sum_f = 0;	// sum of filter only
-
-	int n = spectrum.n();	// for speed
-	for (int i = 0; i < n; i++) {
+	// compensated sums, as the terms vary by orders of magnitude
+	Summation sum_fs = new Summation();	// sum of filter times spectrum
+	Summation sum_f = new Summation();	// sum of filter only
+
+	// the filter vanishes outside its support window
+	int start = this.supportStart();
+	int end = Math.min(spectrum.n(), this.supportEnd());
+	for (int i = start; i < end; i++) {
 	    //double x = spectrum.x(i);
-	    double y = spectrum.y[i];
+	    double y = spectrum.y(i);
 	    //double g = this.interp(x);
-	    double f = this.y[i];
-	    sum_fs += f*y;
-	    sum_f += f;
+	    double f = this.y(i);
+	    sum_fs.add(f*y);
+	    sum_f.add(f);
 	}
-	double f = sum_fs / sum_f;
+	double f = sum_fs.getSum() / sum_f.getSum();
 	double m = -2.5 * Math.log(f/this.refFlux) / Math.log(10);
 	return m;
     }
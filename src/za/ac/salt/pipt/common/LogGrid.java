@@ -0,0 +1,303 @@
+package za.ac.salt.pipt.common;
+
+import za.ac.salt.pipt.common.dataExchange.InvalidValueException;
+
+/**
+ * A grid which is uniform in the natural logarithm of the abscissa rather than
+ * in the abscissa itself. For spectra the abscissa is the wavelength, so that
+ * redshifting, which divides all wavelengths by the same factor 1 + z, becomes
+ * a shift by the same (fractional) number of bins everywhere. Hence a spectrum
+ * held in a log grid can be redshifted by an index shift and a linear step
+ * between neighbouring bins, without interpolating a spline, and without
+ * changing the log grid itself.
+ * <p>
+ * Log grids are meant to hold rest-frame templates such as galaxy spectra.
+ * They are created from a (linear) grid, and the redshifted spectrum is
+ * written back onto a linear grid by redshift(double, Grid). The positions of
+ * the linear grid bins in the log grid are kept for the most recently used
+ * pair of log and linear grid geometries, and they are shared by all log
+ * grids, so that sweeping through a range of redshifts requires no
+ * allocation at all.
+ * <p>
+ * As the bins have to be as narrow as those of the linear grid at its short
+ * end, a log grid created from a linear grid has more bins than the linear
+ * grid. For the default grid of the spectra it takes about 2 MB, and the
+ * shared positions take another 1 MB.
+ */
+public class LogGrid {
+	/** the natural logarithm of the abscissa value of the first bin */
+	private final double lnStart;
+
+	/** the abscissa interval length per bin, in the natural logarithm */
+	private final double lnStep;
+
+	/** the ordinate values */
+	private final double[] y;
+
+	/**
+	 * the position (in bins) of the end of the range covered by the values,
+	 * which may lie up to a bin beyond the last bin
+	 */
+	private final double end;
+
+	/** the lnStart value of the log grid for which positions are kept */
+	private static double positionsLnStart;
+
+	/** the lnStep value of the log grid for which positions are kept */
+	private static double positionsLnStep;
+
+	/** the starting value of the linear grid for which positions are kept */
+	private static int positionsJ;
+
+	/** the resolution of the linear grid for which positions are kept */
+	private static int positionsK;
+
+	/** the range of the linear grid for which positions are kept */
+	private static int positionsM;
+
+	/** the positions of the bins of a linear grid in a log grid (in bins) */
+	private static double[] positions;
+
+	/**
+	 * Creates the log grid by sampling the given grid from its first to its
+	 * last bin, using the interpolation kernel of that grid. The bins are
+	 * chosen such that even at the end of the range the spacing isn't larger
+	 * than the bin length of the given grid, so that no detail is lost. As the
+	 * last bin of the log grid may lie short of the last bin of the given
+	 * grid, values between the two are taken from the last bin.
+	 *
+	 * @param grid
+	 *            the sampled grid
+	 * @throws InvalidValueException
+	 *             if the grid has less than two bins
+	 */
+	public LogGrid(Grid grid) {
+		int n = grid.n();
+		if (n < 2) {
+			throw new InvalidValueException(
+					"A log grid can only be created from a grid with at least two bins.");
+		}
+		double xmin = grid.x(0);
+		double xmax = grid.x(n - 1);
+		this.lnStart = Math.log(xmin);
+		this.lnStep = grid.dx() / xmax;
+		this.end = (Math.log(xmax) - this.lnStart) / this.lnStep;
+		int bins = (int) Math.floor(this.end) + 1;
+
+		// sample the grid (the abscissa values are ascending, which is the
+		// fast case for interpolating many values at once)
+		double[] xs = new double[bins];
+		for (int i = 0; i < bins; i++) {
+			xs[i] = this.x(i);
+		}
+		this.y = new double[bins];
+		grid.interp(xs, this.y);
+	}
+
+	/**
+	 * Creates a log grid with the given geometry, all of whose ordinate values
+	 * are 0.
+	 *
+	 * @param lnStart
+	 *            the natural logarithm of the abscissa value of the first bin
+	 * @param lnStep
+	 *            the abscissa interval length per bin, in the natural logarithm
+	 * @param n
+	 *            the number of bins
+	 * @throws InvalidValueException
+	 *             if the interval length isn't positive or n is less than 2
+	 */
+	public LogGrid(double lnStart, double lnStep, int n) {
+		if (lnStep <= 0 || n < 2) {
+			throw new InvalidValueException(
+					"A log grid requires a positive bin length and at least two bins.");
+		}
+		this.lnStart = lnStart;
+		this.lnStep = lnStep;
+		this.y = new double[n];
+		this.end = n - 1;
+	}
+
+	/**
+	 * Returns the number of bins.
+	 *
+	 * @return the number of bins
+	 */
+	public int n() {
+		return this.y.length;
+	}
+
+	/**
+	 * Returns the natural logarithm of the abscissa value of the first bin.
+	 *
+	 * @return the natural logarithm of the abscissa value of the first bin
+	 */
+	public double lnStart() {
+		return this.lnStart;
+	}
+
+	/**
+	 * Returns the abscissa interval length per bin, in the natural logarithm.
+	 *
+	 * @return the abscissa interval length per bin
+	 */
+	public double lnStep() {
+		return this.lnStep;
+	}
+
+	/**
+	 * Returns the abscissa value at the given index.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the abscissa value at the given index
+	 */
+	public double x(int index) {
+		return Math.exp(this.lnStart + index * this.lnStep);
+	}
+
+	/**
+	 * Returns the ordinate value at the given index. If the index is out of
+	 * bounds, 0 is returned instead.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the ordinate value at the given index
+	 */
+	public double y(int index) {
+		if (index < 0 || index >= this.y.length) {
+			return 0;
+		}
+		return this.y[index];
+	}
+
+	/**
+	 * Sets the ordinate value at the given index; ignore it if the index is out
+	 * of bounds.
+	 *
+	 * @param index
+	 *            the index
+	 * @param y
+	 *            the value to be assigned
+	 */
+	public void setValue(int index, double y) {
+		if (index >= 0 && index < this.y.length) {
+			this.y[index] = y;
+		}
+	}
+
+	/**
+	 * Returns the ordinate value at the given abscissa value after redshifting
+	 * by the given redshift, interpolating linearly between the neighbouring
+	 * bins. Outside the grid, 0 is returned.
+	 *
+	 * @param xForInterpolation
+	 *            the (redshifted) abscissa value
+	 * @param redshift
+	 *            the redshift
+	 * @return the interpolated ordinate value
+	 */
+	public double interp(double xForInterpolation, double redshift) {
+		if (xForInterpolation <= 0) {
+			return 0;
+		}
+		return this.interpPosition((Math.log(xForInterpolation) - this.lnStart)
+				/ this.lnStep - this.shift(redshift));
+	}
+
+	/**
+	 * Writes the values of this grid, redshifted by the given redshift, into
+	 * the given linear grid. The abscissa value of each bin of the linear grid
+	 * is divided by 1 + redshift, and the value at the resulting abscissa
+	 * value is interpolated linearly; bins outside this grid are set to 0. As
+	 * in the logarithm the division is a shift by the same number of bins
+	 * everywhere, this amounts to an index shift and a linear step for each
+	 * bin. The linear grid keeps its geometry, and its ordinate values are
+	 * overwritten in place.
+	 *
+	 * @param redshift
+	 *            the redshift
+	 * @param destination
+	 *            the linear grid into which the redshifted values are written
+	 */
+	public void redshift(double redshift, Grid destination) {
+		double[] positions = this.positions(destination);
+		destination.useFullArray();
+		if (destination.y == null) {
+			destination.reset(destination.j(), destination.k(),
+					destination.m());
+		}
+		double shift = this.shift(redshift);
+		double[] values = destination.y;
+		for (int i = 0; i < positions.length; i++) {
+			values[i] = this.interpPosition(positions[i] - shift);
+		}
+		destination.ensureUpdate();
+	}
+
+	/**
+	 * Returns the number of bins by which the given redshift shifts the
+	 * values.
+	 *
+	 * @param redshift
+	 *            the redshift
+	 * @return the shift (in bins)
+	 */
+	private double shift(double redshift) {
+		return Math.log(1 + redshift) / this.lnStep;
+	}
+
+	/**
+	 * Returns the value at the given (fractional) bin position, interpolating
+	 * linearly. Between the last bin and the end of the range the value of the
+	 * last bin is returned, and outside the range 0 is returned.
+	 *
+	 * @param position
+	 *            the position (in bins)
+	 * @return the interpolated value
+	 */
+	private double interpPosition(double position) {
+		if (!(position >= 0) || position > this.end) {
+			return 0;
+		}
+		if (position >= this.y.length - 1) {
+			return this.y[this.y.length - 1];
+		}
+		int k1 = (int) position;
+		double t = position - k1;
+		double y1 = this.y[k1];
+		return y1 + t * (this.y[k1 + 1] - y1);
+	}
+
+	/**
+	 * Returns the positions of the bins of the given linear grid in this grid
+	 * (in bins). They are computed once for each pair of geometries, and kept
+	 * for the most recently used pair. The returned array must not be
+	 * modified.
+	 *
+	 * @param grid
+	 *            the linear grid
+	 * @return the positions of its bins
+	 */
+	private double[] positions(Grid grid) {
+		synchronized (LogGrid.class) {
+			if (positions == null || positionsLnStart != this.lnStart
+					|| positionsLnStep != this.lnStep
+					|| positionsJ != grid.j() || positionsK != grid.k()
+					|| positionsM != grid.m()) {
+				double[] newPositions = new double[grid.n()];
+				for (int i = 0; i < newPositions.length; i++) {
+					newPositions[i] = (Math.log(grid.x(i)) - this.lnStart)
+							/ this.lnStep;
+				}
+				positions = newPositions;
+				positionsLnStart = this.lnStart;
+				positionsLnStep = this.lnStep;
+				positionsJ = grid.j();
+				positionsK = grid.k();
+				positionsM = grid.m();
+			}
+			return positions;
+		}
+	}
+}
@@ -0,0 +1,381 @@
+package za.ac.salt.pipt.common;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The area-preserving resampling of data given at some wavelengths onto the
+ * bins of a grid, as carried out by GenericSpectrum.resample(double[],
+ * double[], int). As each resampled value is a weighted sum of the data, the
+ * resampling can be described by a sparse matrix, which depends on the
+ * wavelengths and the grid geometry only. This class stores that matrix, so
+ * that resampling another set of data for the same wavelengths (such as
+ * another column of the Kurucz models) reduces to a matrix-vector product.
+ * <p>
+ * Operators are obtained with getInstance(), which keeps the most recently
+ * used ones up to a memory budget (see setMemoryBudget()), so that one-off
+ * wavelength sets cannot pin more than that amount of memory. Operators are
+ * immutable and may be shared between threads.
+ */
+public class ResamplingOperator {
+	/** the default memory budget (in bytes) of the cache */
+	public static final long DEFAULT_MEMORY_BUDGET = 16L << 20;
+
+	/** the most recently used operators (least recent first) */
+	private static final Map<Key, ResamplingOperator> cache = new LinkedHashMap<Key, ResamplingOperator>(
+			16, 0.75f, true);
+
+	/** the memory budget (in bytes) of the cache */
+	private static long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+	/** the memory (in bytes) used by the cached operators and their keys */
+	private static long memoryUsage = 0;
+
+	/** the number of resampled values */
+	private int bins;
+
+	/** the number of matrix entries */
+	private int entries;
+
+	/** the resampled value (row) of each entry */
+	private int[] rows;
+
+	/** the data point (column) of each entry */
+	private int[] columns;
+
+	/** the length of the overlap between data point and bin for each entry */
+	private double[] overlaps;
+
+	/** the width of each bin */
+	private double[] widths;
+
+	/**
+	 * Returns the operator for resampling data given at the given wavelengths
+	 * onto the bins of the given grid. The operator is taken from the cache if
+	 * it has been created for the same wavelengths and grid geometry before
+	 * and hasn't been evicted since.
+	 *
+	 * @param wavelengths
+	 *            the wavelengths (in ascending order)
+	 * @param n
+	 *            the number of data points
+	 * @param grid
+	 *            the grid defining the bins
+	 * @return the operator
+	 */
+	public static ResamplingOperator getInstance(double[] wavelengths, int n,
+			Grid grid) {
+		Key key = new Key(wavelengths, n, grid);
+		synchronized (cache) {
+			ResamplingOperator operator = cache.get(key);
+			if (operator != null) {
+				return operator;
+			}
+		}
+		ResamplingOperator operator = new ResamplingOperator(wavelengths, n,
+				grid);
+		operator.compact();
+		long memory = memory(key, operator);
+		synchronized (cache) {
+			if (memory <= memoryBudget) {
+				ResamplingOperator replaced = cache.put(key, operator);
+				if (replaced != null) {
+					memoryUsage -= memory(key, replaced);
+				}
+				memoryUsage += memory;
+				trim();
+			}
+		}
+		return operator;
+	}
+
+	/**
+	 * Sets the memory budget, i.e. the maximum memory (in bytes) used by the
+	 * cached operators. The least recently used operators are removed if
+	 * necessary. A budget of 0 disables the cache.
+	 *
+	 * @param bytes
+	 *            the memory budget (in bytes)
+	 */
+	public static void setMemoryBudget(long bytes) {
+		synchronized (cache) {
+			memoryBudget = Math.max(bytes, 0);
+			trim();
+		}
+	}
+
+	/**
+	 * Returns the memory (in bytes) used by the cached operators.
+	 *
+	 * @return the memory used by the cached operators
+	 */
+	public static long getMemoryUsage() {
+		synchronized (cache) {
+			return memoryUsage;
+		}
+	}
+
+	/**
+	 * Removes the least recently used operators until the memory usage is
+	 * within the budget. The caller must hold the lock on the cache.
+	 */
+	private static void trim() {
+		Iterator<Map.Entry<Key, ResamplingOperator>> iterator = cache
+				.entrySet().iterator();
+		while (memoryUsage > memoryBudget && iterator.hasNext()) {
+			Map.Entry<Key, ResamplingOperator> entry = iterator.next();
+			memoryUsage -= memory(entry.getKey(), entry.getValue());
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Returns the approximate memory (in bytes) used by the arrays of the
+	 * given cache entry.
+	 *
+	 * @param key
+	 *            the key
+	 * @param operator
+	 *            the operator
+	 * @return the memory used by the cache entry
+	 */
+	private static long memory(Key key, ResamplingOperator operator) {
+		return 8L * key.wavelengths.length + 16L * operator.rows.length + 8L
+				* operator.widths.length;
+	}
+
+	/**
+	 * Creates the operator for resampling data given at the given wavelengths
+	 * onto the bins of the given grid. Input and output bins are moved through
+	 * together. For each input bin, each overlapping output bin is located, and
+	 * the overlap is recorded as a matrix entry.
+	 *
+	 * @param x
+	 *            the wavelengths (in ascending order)
+	 * @param nold
+	 *            the number of data points
+	 * @param grid
+	 *            the grid defining the bins
+	 */
+	private ResamplingOperator(double[] x, int nold, Grid grid) {
+		int nnew = grid.n();
+		double[] xnew = new double[nnew];
+		for (int i = 0; i < nnew; i++) {
+			xnew[i] = grid.x(i);
+		}
+		this.bins = nnew;
+		this.entries = 0;
+		this.rows = new int[nnew + nold];
+		this.columns = new int[nnew + nold];
+		this.overlaps = new double[nnew + nold];
+		this.widths = new double[nnew];
+		for (int j = 0; j < nnew; j++) {
+			this.widths[j] = x_hi(xnew, j) - x_lo(xnew, j);
+		}
+
+		int j = 0; // index into the output array
+		double x1_hi; // high edge of input zone
+		double x1_lo; // low edge of input zone
+		double x2_hi; // high edge of output zone
+		double x2_lo; // low edge of output zone
+		for (int i = 0; i < nold; i++) {
+			// move the input zone to the next overlap
+			x2_lo = x_lo(xnew, j);
+			while ((x1_hi = x_hi(x, i)) < x2_lo) {
+				i++;
+				if (i == nold) {
+					return;
+				}
+			}
+
+			// get the other input zone edge
+			x1_lo = x_lo(x, i);
+
+			// move the output zone to the next overlap
+			while ((x2_hi = x_hi(xnew, j)) < x1_lo) {
+				j++;
+				if (j == nnew) {
+					return;
+				}
+			}
+
+			// record the output zones overlapped by this input zone
+			while ((j < nnew) && ((x2_lo = x_lo(xnew, j)) < x1_hi)) {
+				x2_hi = x_hi(xnew, j);
+				double o1 = Math.max(x1_lo, x2_lo);
+				double o2 = Math.min(x1_hi, x2_hi);
+				this.addEntry(j, i, o2 - o1);
+				j++;
+			}
+
+			// back up one output zone, as it may be hit by the next input zone
+			j--;
+		}
+	}
+
+	/**
+	 * Appends a matrix entry, enlarging the arrays if necessary.
+	 *
+	 * @param row
+	 *            the resampled value
+	 * @param column
+	 *            the data point
+	 * @param overlap
+	 *            the length of the overlap between data point and bin
+	 */
+	private void addEntry(int row, int column, double overlap) {
+		if (this.entries == this.rows.length) {
+			int capacity = 2 * this.entries;
+			this.rows = Arrays.copyOf(this.rows, capacity);
+			this.columns = Arrays.copyOf(this.columns, capacity);
+			this.overlaps = Arrays.copyOf(this.overlaps, capacity);
+		}
+		this.rows[this.entries] = row;
+		this.columns[this.entries] = column;
+		this.overlaps[this.entries] = overlap;
+		this.entries++;
+	}
+
+	/**
+	 * Shrinks the arrays of matrix entries to the number of entries, so that
+	 * no unused capacity is kept in the cache.
+	 */
+	private void compact() {
+		this.rows = Arrays.copyOf(this.rows, this.entries);
+		this.columns = Arrays.copyOf(this.columns, this.entries);
+		this.overlaps = Arrays.copyOf(this.overlaps, this.entries);
+	}
+
+	/**
+	 * Resamples the given data. The contributions are added in the same order
+	 * as by the original rebinning, so that the results are identical.
+	 *
+	 * @param data
+	 *            the data given at the wavelengths of this operator
+	 * @param resampled
+	 *            the array into which the resampled values are written; it
+	 *            must have at least as many elements as there are bins
+	 */
+	public void apply(double[] data, double[] resampled) {
+		Arrays.fill(resampled, 0, this.bins, 0);
+		for (int e = 0; e < this.entries; e++) {
+			int row = this.rows[e];
+			// the energy in the overlap region, turned into an energy density
+			resampled[row] += data[this.columns[e]] * this.overlaps[e]
+					/ this.widths[row];
+		}
+	}
+
+	/**
+	 * Returns the number of resampled values.
+	 *
+	 * @return the number of resampled values
+	 */
+	public int bins() {
+		return this.bins;
+	}
+
+	/**
+	 * Returns the wavelength of the low edge of the bin with the given index.
+	 *
+	 * @param x
+	 *            the wavelengths
+	 * @param index
+	 *            the index of the bin whose low edge is returned
+	 * @return the wavelength of the low edge of the bin with the given index
+	 */
+	private static double x_lo(double[] x, int index) {
+		// watch out for the low edge of the array
+		if (index > 0) {
+			return (x[index - 1] + x[index]) / 2; // normal
+		}
+		return x[0] - (x[1] - x[0]) / 2; // edge
+	}
+
+	/**
+	 * Returns the wavelength of the high edge of the bin with the given index.
+	 * Note that the high edge of the array is the end of the whole array, not
+	 * of the data points used.
+	 *
+	 * @param x
+	 *            the wavelengths
+	 * @param index
+	 *            the index of the bin whose high edge is returned
+	 * @return the wavelength of the high edge of the bin with the given index
+	 */
+	private static double x_hi(double[] x, int index) {
+		// watch out for the high edge of the array
+		if (index < x.length - 1) {
+			return (x[index] + x[index + 1]) / 2; // normal
+		}
+		return x[index] + (x[index] - x[index - 1]) / 2; // edge
+	}
+
+	/**
+	 * The wavelengths and grid geometry identifying an operator. Only the
+	 * wavelengths which can influence the operator are kept, i.e. the data
+	 * points and, as it is used for the high edge of the last data point, the
+	 * following array element.
+	 */
+	private static class Key {
+		/** the number of data points */
+		private final int n;
+
+		/** the relevant wavelengths */
+		private final double[] wavelengths;
+
+		/** the abscissa value of the first grid bin */
+		private final double x0;
+
+		/** the binary logarithm of the grid resolution */
+		private final int lbResolution;
+
+		/** the number of grid bins */
+		private final int bins;
+
+		/** the hash code */
+		private final int hashCode;
+
+		/**
+		 * Creates the key for the given wavelengths and grid.
+		 *
+		 * @param wavelengths
+		 *            the wavelengths
+		 * @param n
+		 *            the number of data points
+		 * @param grid
+		 *            the grid
+		 */
+		Key(double[] wavelengths, int n, Grid grid) {
+			this.n = n;
+			this.wavelengths = Arrays.copyOf(wavelengths,
+					Math.min(n + 1, wavelengths.length));
+			this.x0 = grid.x0();
+			this.lbResolution = grid.k();
+			this.bins = grid.n();
+			int h = Arrays.hashCode(this.wavelengths);
+			h = 31 * h + n;
+			h = 31 * h + Double.valueOf(this.x0).hashCode();
+			h = 31 * h + this.lbResolution;
+			h = 31 * h + this.bins;
+			this.hashCode = h;
+		}
+
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return this.n == key.n && this.x0 == key.x0
+					&& this.lbResolution == key.lbResolution
+					&& this.bins == key.bins
+					&& Arrays.equals(this.wavelengths, key.wavelengths);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package za.ac.salt.pipt.common;
+
+/**
+ * Implements the elementary loops of GridKernels as plain scalar loops. This
+ * implementation is used whenever the vectorized one (see VectorGridKernels)
+ * is not available.
+ */
+final class ScalarGridKernels implements GridKernelBackend {
+
+	public void add(double[] y, int start, int end, double addedValue) {
+		for (int i = start; i < end; i++) {
+			y[i] += addedValue;
+		}
+	}
+
+	public void add(double[] y, double[] z, int offset, int start, int end) {
+		for (int i = start; i < end; i++) {
+			y[i] += z[i + offset];
+		}
+	}
+
+	public void scale(double[] y, int start, int end, double factor) {
+		for (int i = start; i < end; i++) {
+			y[i] *= factor;
+		}
+	}
+
+	public void scale(double[] y, double[] z, int offset, int start, int end) {
+		for (int i = start; i < end; i++) {
+			y[i] *= z[i + offset];
+		}
+	}
+
+	public void div(double[] y, double[] z, int offset, int start, int end) {
+		for (int i = start; i < end; i++) {
+			double divisor = z[i + offset];
+			y[i] = divisor != 0 ? y[i] / divisor : y[i];
+		}
+	}
+
+	public void invert(double[] y, int start, int end) {
+		for (int i = start; i < end; i++) {
+			double value = y[i];
+			y[i] = value != 0 ? 1.0 / value : value;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package za.ac.salt.pipt.common;
+
+import java.net.URL;
+
+/**
+ * This class describes a filter which vanishes over most of the wavelength
+ * range, such as a narrow-band or a Johnson filter. Only the support window
+ * of the throughput curve is stored (see Grid.useSupportWindow()), so that
+ * applying the filter to a spectrum only touches the bins within that window.
+ */
+public class SparseFilter extends Filter {
+    /**
+     * Creates a filter the throughput of which is described by the given array
+     * of wavelength values and the array of corresponding throughput values.
+     *
+     * @param wavelengths
+     *            the wavelengths (in A)
+     * @param throughputs
+     *            the corresponding throughput values
+     * @param n
+     *            the number of data points
+     */
+    public SparseFilter(double wavelengths[], double throughputs[], int n) {
+	super (wavelengths, throughputs, n);
+	this.useSupportWindow ();
+    }
+
+    /**
+     * Creates a filter the throughput of which is given in the file to which
+     * the given URL points.
+     *
+     * @param url
+     *            the URL of the file containing the wavelengths and
+     *            corresponding throughput values
+     */
+    public SparseFilter(URL url) {
+	super (url);
+	this.useSupportWindow ();
+    }
+
+    /**
+     * Creates a filter the throughput of which is given by the specified grid
+     * of wavelengths and corresponding throughput values.
+     *
+     * @param grid
+     *            the grid of wavelengths and corresponding throughput values
+     */
+    public SparseFilter(Grid grid) {
+	super (grid);
+	this.useSupportWindow ();
+    }
+
+    /**
+     * Create a box filter which is 0 everywhere, and 1 if cutOn < wavelength <
+     * cutOff
+     *
+     * @param cutOn
+     *            blue edge of the filter
+     * @param cutOff
+     *            red edge of the filter
+     */
+    public SparseFilter(double cutOn, double cutOff) {
+	super (cutOn, cutOff);
+	this.useSupportWindow ();
+    }
+}
@@ -0,0 +1,238 @@
+package za.ac.salt.pipt.common;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Provides accurate and reproducible summation of double values.
+ * <p>
+ * An instance of this class is an accumulator using compensated (Kahan-Babuska
+ * or Neumaier) summation, for which the error does not grow with the number of
+ * terms. The static sum methods sum array ranges pairwise: the range is split
+ * in halves recursively until at most LEAF_SIZE values are left, which are
+ * summed with compensation. As the shape of this tree depends on the range
+ * only, the result is the same bit for bit whether the halves are summed
+ * sequentially or in parallel by fork-join tasks.
+ */
+public class Summation {
+	/** the maximum number of values summed with compensation in one go */
+	public static final int LEAF_SIZE = 256;
+
+	/** the minimum number of values worth handing to a separate task */
+	private static final int TASK_SIZE = 16384;
+
+	/** the running sum */
+	private double sum;
+
+	/** the accumulated rounding errors of the running sum */
+	private double compensation;
+
+	/** Creates an accumulator with a sum of 0. */
+	public Summation() {
+		this.sum = 0;
+		this.compensation = 0;
+	}
+
+	/**
+	 * Adds the given value to the sum.
+	 *
+	 * @param value
+	 *            the value
+	 */
+	public void add(double value) {
+		double t = this.sum + value;
+		if (Math.abs(this.sum) >= Math.abs(value)) {
+			this.compensation += (this.sum - t) + value;
+		} else {
+			this.compensation += (value - t) + this.sum;
+		}
+		this.sum = t;
+	}
+
+	/**
+	 * Returns the sum of the values added so far.
+	 *
+	 * @return the sum
+	 */
+	public double getSum() {
+		return this.sum + this.compensation;
+	}
+
+	/**
+	 * Returns the sum of the array elements from start (inclusive) to end
+	 * (exclusive), using pairwise summation.
+	 *
+	 * @param values
+	 *            the array
+	 * @param start
+	 *            the first index
+	 * @param end
+	 *            the index following the last index
+	 * @return the sum
+	 */
+	public static double sum(double[] values, int start, int end) {
+		return sum(values, start, end, false);
+	}
+
+	/**
+	 * Returns the sum of the array elements from start (inclusive) to end
+	 * (exclusive), using pairwise summation. If requested, large ranges are
+	 * split across fork-join tasks. This doesn't change the result.
+	 *
+	 * @param values
+	 *            the array
+	 * @param start
+	 *            the first index
+	 * @param end
+	 *            the index following the last index
+	 * @param parallel
+	 *            states whether the sum may be computed in parallel
+	 * @return the sum
+	 */
+	public static double sum(double[] values, int start, int end,
+			boolean parallel) {
+		if (parallel && end - start > TASK_SIZE) {
+			return ForkJoinPool.commonPool().invoke(
+					new SumTask(values, start, end));
+		}
+		return pairwiseSum(values, start, end);
+	}
+
+	/**
+	 * Returns the sum of the given partial sums, combining them as the sum
+	 * methods combine the sums of the two halves of a range. Hence if a range
+	 * of a multiple of LEAF_SIZE values (a power of 2 times LEAF_SIZE) is cut
+	 * into blocks of equal length, which again is a power of 2 times
+	 * LEAF_SIZE, summing the blocks with the sum methods and their sums with
+	 * this method gives the same result as summing the whole range.
+	 *
+	 * @param partialSums
+	 *            the partial sums
+	 * @param start
+	 *            the first index
+	 * @param end
+	 *            the index following the last index
+	 * @return the sum
+	 */
+	public static double combine(double[] partialSums, int start, int end) {
+		if (end - start == 1) {
+			return partialSums[start];
+		}
+		if (end <= start) {
+			return 0;
+		}
+		int middle = start + (end - start) / 2;
+		return combine(partialSums, start, middle)
+				+ combine(partialSums, middle, end);
+	}
+
+	/**
+	 * Returns the sum of an array range, using pairwise summation.
+	 *
+	 * @param values
+	 *            the array
+	 * @param start
+	 *            the first index
+	 * @param end
+	 *            the index following the last index
+	 * @return the sum
+	 */
+	private static double pairwiseSum(double[] values, int start, int end) {
+		if (end - start <= LEAF_SIZE) {
+			return leafSum(values, start, end);
+		}
+		int middle = middle(start, end);
+		return pairwiseSum(values, start, middle)
+				+ pairwiseSum(values, middle, end);
+	}
+
+	/**
+	 * Returns the index at which a range is split into halves. The first half
+	 * contains a multiple of LEAF_SIZE values, so that the leaves line up with
+	 * blocks of LEAF_SIZE values.
+	 *
+	 * @param start
+	 *            the first index
+	 * @param end
+	 *            the index following the last index
+	 * @return the first index of the second half
+	 */
+	private static int middle(int start, int end) {
+		int leaves = (end - start + LEAF_SIZE - 1) / LEAF_SIZE;
+		return start + (leaves / 2) * LEAF_SIZE;
+	}
+
+	/**
+	 * Returns the sum of an array range, using compensated summation.
+	 *
+	 * @param values
+	 *            the array
+	 * @param start
+	 *            the first index
+	 * @param end
+	 *            the index following the last index
+	 * @return the sum
+	 */
+	private static double leafSum(double[] values, int start, int end) {
+		double sum = 0;
+		double compensation = 0;
+		for (int i = start; i < end; i++) {
+			double value = values[i];
+			double t = sum + value;
+			if (Math.abs(sum) >= Math.abs(value)) {
+				compensation += (sum - t) + value;
+			} else {
+				compensation += (value - t) + sum;
+			}
+			sum = t;
+		}
+		return sum + compensation;
+	}
+
+	/** A fork-join task summing the two halves of a range in parallel. */
+	private static class SumTask extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+
+		/** the array */
+		private final double[] values;
+
+		/** the first index */
+		private final int start;
+
+		/** the index following the last index */
+		private final int end;
+
+		/**
+		 * Creates the task for summing the given array range.
+		 *
+		 * @param values
+		 *            the array
+		 * @param start
+		 *            the first index
+		 * @param end
+		 *            the index following the last index
+		 */
+		SumTask(double[] values, int start, int end) {
+			this.values = values;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * Sums the range, splitting it as pairwiseSum() does.
+		 *
+		 * @return the sum
+		 */
+		protected Double compute() {
+			if (this.end - this.start <= TASK_SIZE) {
+				return pairwiseSum(this.values, this.start, this.end);
+			}
+			int middle = middle(this.start, this.end);
+			SumTask first = new SumTask(this.values, this.start, middle);
+			SumTask second = new SumTask(this.values, middle, this.end);
+			first.fork();
+			double secondSum = second.compute();
+			return first.join() + secondSum;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package za.ac.salt.pipt.common;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implements the elementary loops of GridKernels by means of the Vector API
+ * (jdk.incubator.vector), using the widest vectors supported by the host
+ * (such as 256 bits for AVX2 and 512 bits for AVX-512). The remaining elements
+ * which don't fill a whole vector are handled by scalar loops. Only lane-wise
+ * additions, multiplications and divisions are used, so that the results are
+ * identical to those of ScalarGridKernels.
+ * <p>
+ * As the Vector API is an incubator module, this class is compiled by the Ant
+ * target "vector" only, and it can be loaded only if the Java VM is started
+ * with the option --add-modules jdk.incubator.vector. GridKernels falls back
+ * to ScalarGridKernels otherwise.
+ */
+final class VectorGridKernels implements GridKernelBackend {
+
+	/** the species of the double vectors */
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+	public void add(double[] y, int start, int end, double addedValue) {
+		int i = start;
+		int bound = start + DOUBLES.loopBound(end - start);
+		for (; i < bound; i += DOUBLES.length()) {
+			DoubleVector.fromArray(DOUBLES, y, i).add(addedValue).intoArray(y,
+					i);
+		}
+		for (; i < end; i++) {
+			y[i] += addedValue;
+		}
+	}
+
+	public void add(double[] y, double[] z, int offset, int start, int end) {
+		int i = start;
+		int bound = start + DOUBLES.loopBound(end - start);
+		for (; i < bound; i += DOUBLES.length()) {
+			DoubleVector.fromArray(DOUBLES, y, i).add(
+					DoubleVector.fromArray(DOUBLES, z, i + offset)).intoArray(
+					y, i);
+		}
+		for (; i < end; i++) {
+			y[i] += z[i + offset];
+		}
+	}
+
+	public void scale(double[] y, int start, int end, double factor) {
+		int i = start;
+		int bound = start + DOUBLES.loopBound(end - start);
+		for (; i < bound; i += DOUBLES.length()) {
+			DoubleVector.fromArray(DOUBLES, y, i).mul(factor).intoArray(y, i);
+		}
+		for (; i < end; i++) {
+			y[i] *= factor;
+		}
+	}
+
+	public void scale(double[] y, double[] z, int offset, int start, int end) {
+		int i = start;
+		int bound = start + DOUBLES.loopBound(end - start);
+		for (; i < bound; i += DOUBLES.length()) {
+			DoubleVector.fromArray(DOUBLES, y, i).mul(
+					DoubleVector.fromArray(DOUBLES, z, i + offset)).intoArray(
+					y, i);
+		}
+		for (; i < end; i++) {
+			y[i] *= z[i + offset];
+		}
+	}
+
+	public void div(double[] y, double[] z, int offset, int start, int end) {
+		int i = start;
+		int bound = start + DOUBLES.loopBound(end - start);
+		for (; i < bound; i += DOUBLES.length()) {
+			DoubleVector divisors = DoubleVector.fromArray(DOUBLES, z, i
+					+ offset);
+			VectorMask<Double> nonZero = divisors.compare(VectorOperators.NE,
+					0);
+			DoubleVector.fromArray(DOUBLES, y, i).div(divisors, nonZero)
+					.intoArray(y, i);
+		}
+		for (; i < end; i++) {
+			double divisor = z[i + offset];
+			y[i] = divisor != 0 ? y[i] / divisor : y[i];
+		}
+	}
+
+	public void invert(double[] y, int start, int end) {
+		DoubleVector one = DoubleVector.broadcast(DOUBLES, 1.0);
+		int i = start;
+		int bound = start + DOUBLES.loopBound(end - start);
+		for (; i < bound; i += DOUBLES.length()) {
+			DoubleVector values = DoubleVector.fromArray(DOUBLES, y, i);
+			VectorMask<Double> nonZero = values.compare(VectorOperators.NE, 0);
+			values.blend(one.div(values), nonZero).intoArray(y, i);
+		}
+		for (; i < end; i++) {
+			double value = y[i];
+			y[i] = value != 0 ? 1.0 / value : value;
+		}
+	}
+}
@@ -121,14 +121,14 @@ public class SpectrumPlotPanel extends JPanel
 	    // exclude zeroes at the edges
 	    int imin = 0;
 	    for (int i = 0; i < spectrum.n() - 1; i++) {
-		if (spectrum.y[i] != 0) {
+		if (spectrum.y(i) != 0) {
 		    imin = i;
 		    break;
 		}
 	    }
 	    int imax = spectrum.n();
 	    for (int i = spectrum.n()-1; i >= 0; i--) {
-		if (spectrum.y[i] != 0) {
+		if (spectrum.y(i) != 0) {
 		    imax = i;
 		    break;
 		}
@@ -188,7 +188,7 @@ public class SpectrumPlotPanel extends JPanel
 	// sample the data into the tmp array
 	npix -= npix % kpix;
 	for (int i = 0; i < npix; i++) {
-	    kdata[i/kbin] += spectrum.y[i+i0];
+	    kdata[i/kbin] += spectrum.y(i+i0);
 	}
 
 	// preserve the vertical scale
@@ -0,0 +1,458 @@
+package za.ac.salt.pipt.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import za.ac.salt.pipt.common.dataExchange.InvalidValueException;
+
+/**
+ * Tests that GridDataParser parses numbers exactly like
+ * Double.parseDouble(String), for numbers taking the direct conversion, the
+ * Eisel-Lemire algorithm and the fallback to Double.parseDouble(String), and
+ * that reading grid data gives the same comment handling and error messages
+ * as before. The test is run by the Ant target "test"; it exits with a
+ * non-zero status if a check fails.
+ */
+public class GridDataParserTest {
+
+	/** the number of random numbers per conversion path */
+	private static final int NUMBERS = 200000;
+
+	/** the random number generator for the parsed numbers */
+	private static final Random random = new Random(20100215);
+
+	public static void main(String[] args) throws IOException {
+		testFastPath();
+		testEiselLemire();
+		testFallback();
+		testSpecialCases();
+		testInvalidNumbers();
+		testComments();
+		testLineEndings();
+		testErrorMessages();
+		System.out.println("GridDataParserTest: all checks passed");
+	}
+
+	/**
+	 * Checks numbers with at most 15 significant digits and a decimal exponent
+	 * between -22 and 22, which are converted directly.
+	 */
+	private static void testFastPath() throws IOException {
+		List<String> numbers = new ArrayList<String>();
+		while (numbers.size() < NUMBERS) {
+			String number = decimal(1 + random.nextInt(15), random.nextInt(45) - 22);
+			if (path(number) == Path.FAST) {
+				numbers.add(number);
+			}
+		}
+		checkEquivalence(numbers, "fast path");
+	}
+
+	/**
+	 * Checks numbers with 16 to 18 significant digits or a decimal exponent
+	 * beyond 22, which are converted with the Eisel-Lemire algorithm (unless it
+	 * cannot decide on the rounding). The shortest representations of random
+	 * doubles are included, as they mostly have 16 or 17 digits.
+	 */
+	private static void testEiselLemire() throws IOException {
+		List<String> numbers = new ArrayList<String>();
+		while (numbers.size() < NUMBERS) {
+			String number;
+			switch (random.nextInt(3)) {
+			case 0:
+				double value = Double.longBitsToDouble(random.nextLong()
+						& Long.MAX_VALUE);
+				if (Double.isNaN(value) || Double.isInfinite(value)) {
+					continue;
+				}
+				number = Double.toString(value);
+				break;
+			case 1:
+				number = decimal(16 + random.nextInt(3), random.nextInt(80) - 40);
+				break;
+			default:
+				number = decimal(1 + random.nextInt(18),
+						random.nextInt(600) - 300);
+			}
+			if (path(number) == Path.EISEL_LEMIRE) {
+				numbers.add(number);
+			}
+		}
+		checkEquivalence(numbers, "Eisel-Lemire path");
+	}
+
+	/**
+	 * Checks numbers with more than 18 significant digits, huge exponents and
+	 * subnormal results, which are handed to Double.parseDouble(String).
+	 */
+	private static void testFallback() throws IOException {
+		List<String> numbers = new ArrayList<String>();
+		while (numbers.size() < NUMBERS) {
+			String number;
+			switch (random.nextInt(4)) {
+			case 0:
+				number = decimal(19 + random.nextInt(20),
+						random.nextInt(100) - 50);
+				break;
+			case 1:
+				number = decimal(1 + random.nextInt(18), (random.nextBoolean() ? 1
+						: -1)
+						* (343 + random.nextInt(2000)));
+				break;
+			case 2:
+				number = Double.toString(Double.longBitsToDouble(random
+						.nextLong()
+						& 0x000FFFFFFFFFFFFFL));
+				break;
+			default:
+				number = decimal(1 + random.nextInt(18), -324
+						- random.nextInt(20));
+			}
+			if (path(number) == Path.FALLBACK) {
+				numbers.add(number);
+			}
+		}
+		checkEquivalence(numbers, "fallback path");
+	}
+
+	/**
+	 * Checks the boundaries of the conversion paths, numbers exactly halfway
+	 * between two doubles, and the various ways of writing a number.
+	 */
+	private static void testSpecialCases() throws IOException {
+		String[] numbers = { "0", "-0", "+0", "0.0", "-0.0", "0e999", "00000",
+				".5", "5.", "-.5", "+5.", "000123.4500", "1e22", "1e23",
+				"9007199254740992", "9007199254740993", "9007199254740994",
+				"9007199254740995", "123456789012345678", "1234567890123456789",
+				"0.000000000000000000000000000001",
+				"1.7976931348623157e308", "1.7976931348623158e308",
+				"1.7976931348623159e308", "2.2250738585072014e-308",
+				"2.2250738585072011e-308", "4.9e-324", "2.4e-324", "1e-400",
+				"1e400", "1E5", "1e+5", "1e-5", "1e0005", "1e99999999999",
+				"1e-99999999999", "2.5e-1", "7.3177701707893310e+15",
+				"8.98846567431158e307", "3.0e-44", "Infinity", "-Infinity",
+				"NaN", "1d", "1f", "1.5D", "0x1p3", "0x1.8p1" };
+		List<String> list = new ArrayList<String>();
+		for (String number : numbers) {
+			list.add(number);
+		}
+		checkEquivalence(list, "special cases");
+	}
+
+	/**
+	 * Checks that invalid numbers give a NumberFormatException with the same
+	 * message as Double.parseDouble(String).
+	 */
+	private static void testInvalidNumbers() throws IOException {
+		String[] numbers = { "abc", "-", "+", ".", "-.", "e5", "1e", "1e+",
+				"1e-", "1.2.3", "1e5.5", "1,5", "--1", "1-", "0x", "12abc",
+				"1234567890123456789012x" };
+		for (String number : numbers) {
+			String expected = null;
+			try {
+				Double.parseDouble(number);
+			} catch (NumberFormatException e) {
+				expected = e.getMessage();
+			}
+			assertTrue(expected != null, number + " is a valid number");
+			GridDataParser parser = parser(number);
+			try {
+				parser.parseDouble(parser.tokenStart(), parser.tokenEnd());
+				fail(number + " has been parsed");
+			} catch (NumberFormatException e) {
+				assertEquals(expected, e.getMessage(), "message for " + number);
+			}
+		}
+	}
+
+	/**
+	 * Checks that lines whose first token starts with '!' or '#' are skipped.
+	 */
+	private static void testComments() {
+		String plain = "4000 1\n4010 2\n4020 3\n";
+		String commented = "! header\n#\n4000 1\n  !indented comment 1 2\n"
+				+ "4010 2\n#4015 7\n\t# tab\n4020 3\n!";
+		assertSameData(plain, commented, "commented data");
+	}
+
+	/**
+	 * Checks that lines may end with a line feed, a carriage return or both,
+	 * and that the last line ending is optional.
+	 */
+	private static void testLineEndings() {
+		String plain = "4000 1\n4010 2\n4020 3\n";
+		assertSameData(plain, "4000 1\r\n4010 2\r\n4020 3\r\n", "CRLF");
+		assertSameData(plain, "4000 1\r4010 2\r4020 3\r", "CR");
+		assertSameData(plain, "4000 1\n4010 2\n4020 3", "no final line ending");
+		assertSameData(plain, "4000\t1\n 4010  2 \n4020\f3\n", "whitespace");
+	}
+
+	/**
+	 * Checks the error messages for blank lines, lines with a single token and
+	 * invalid numbers.
+	 */
+	private static void testErrorMessages() {
+		String blank = "When trying to read in grid data, the following error occured: null";
+		assertReadError("4000 1\n\n4010 2\n", blank, "empty line");
+		assertReadError("4000 1\n \t \n4010 2\n", blank, "blank line");
+		assertReadError("4000 1\r\n\r\n4010 2\r\n", blank, "empty CRLF line");
+		assertReadError("4000 1\n4010\n",
+				"When trying to read in grid data, the following error occured: "
+						+ "The grid data must contain two numbers per line. "
+						+ "Comments must be preceded by a '!' or a '#'.",
+				"single token");
+		assertReadError("4000 abc\n",
+				"The grid data contained a string which is no valid number: "
+						+ "For input string: \"abc\". Each line of the data "
+						+ "must contain two numbers. Comments must be preceded "
+						+ "by a '!' or '#'.", "invalid number");
+		assertReadError("4000 1\n4010 2 // two\n4020 1e\n",
+				"The grid data contained a string which is no valid number: "
+						+ "For input string: \"1e\". Each line of the data "
+						+ "must contain two numbers. Comments must be preceded "
+						+ "by a '!' or '#'.", "incomplete exponent");
+	}
+
+	/** The ways in which GridDataParser converts a number. */
+	private enum Path {
+		FAST, EISEL_LEMIRE, FALLBACK
+	}
+
+	/**
+	 * Returns the way in which GridDataParser converts the given valid
+	 * decimal number, by the same criteria as the parser. Numbers for which
+	 * the Eisel-Lemire algorithm cannot decide on the rounding are classified
+	 * as EISEL_LEMIRE; there are few of them.
+	 *
+	 * @param number
+	 *            the number
+	 * @return the conversion path
+	 */
+	private static Path path(String number) {
+		String s = number.replaceFirst("^[+-]", "");
+		int e = s.indexOf('e') >= 0 ? s.indexOf('e') : s.indexOf('E');
+		String significand = e >= 0 ? s.substring(0, e) : s;
+		long exponent = e >= 0 ? Long.parseLong(s.substring(e + 1)
+				.replaceFirst("^\\+", "")) : 0;
+		int point = significand.indexOf('.');
+		String digits = significand.replace(".", "").replaceFirst("^0+", "");
+		if (point >= 0) {
+			exponent -= significand.length() - point - 1;
+		}
+		if (digits.length() == 0) {
+			return Path.FAST;
+		}
+		if (digits.length() > 18) {
+			return Path.FALLBACK;
+		}
+		long mantissa = Long.parseLong(digits);
+		if (mantissa <= 1L << 53 && exponent >= -22 && exponent <= 22) {
+			return Path.FAST;
+		}
+		double value = Math.abs(Double.parseDouble(number));
+		if (exponent < -342 || exponent > 308 || value < Double.MIN_NORMAL
+				|| Double.isInfinite(value)) {
+			return Path.FALLBACK;
+		}
+		return Path.EISEL_LEMIRE;
+	}
+
+	/**
+	 * Returns a random decimal number with the given number of significant
+	 * digits (the first of which isn't 0) and the given decimal exponent of
+	 * its last digit. The number is written in various ways, with or without
+	 * a sign, decimal point, leading zeros and exponent.
+	 *
+	 * @param digits
+	 *            the number of significant digits
+	 * @param exponent10
+	 *            the decimal exponent of the last digit
+	 * @return the number
+	 */
+	private static String decimal(int digits, int exponent10) {
+		StringBuilder significand = new StringBuilder();
+		significand.append((char) ('1' + random.nextInt(9)));
+		for (int i = 1; i < digits; i++) {
+			significand.append((char) ('0' + random.nextInt(10)));
+		}
+		StringBuilder number = new StringBuilder();
+		switch (random.nextInt(4)) {
+		case 0:
+			number.append('-');
+			break;
+		case 1:
+			number.append('+');
+			break;
+		default:
+		}
+		if (random.nextInt(8) == 0) {
+			number.append("000");
+		}
+
+		// put the decimal point somewhere and adjust the exponent
+		int point = random.nextInt(digits + 3) - 1;
+		int exponent = exponent10;
+		if (point < 0) {
+			number.append(significand);
+		} else if (point <= digits) {
+			number.append(significand, 0, digits - point).append('.').append(
+					significand, digits - point, digits);
+			exponent += point;
+		} else {
+			number.append("0.000").append(significand);
+			exponent += digits + 3;
+		}
+		if (exponent != 0 || random.nextInt(4) == 0) {
+			number.append(random.nextBoolean() ? 'e' : 'E');
+			if (exponent >= 0 && random.nextBoolean()) {
+				number.append('+');
+			}
+			number.append(exponent);
+		}
+		return number.toString();
+	}
+
+	/**
+	 * Checks that all the given numbers are parsed bit for bit like
+	 * Double.parseDouble(String) does. The numbers are parsed from a single
+	 * stream, one per line and (in reverse order) as the second token, so
+	 * that the parser has to refill and grow its buffer.
+	 *
+	 * @param numbers
+	 *            the numbers
+	 * @param description
+	 *            the description of the numbers
+	 */
+	private static void checkEquivalence(List<String> numbers,
+			String description) throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < numbers.size(); i++) {
+			text.append(numbers.get(i)).append(i % 3 == 0 ? " \t" : " ")
+					.append(numbers.get(numbers.size() - 1 - i)).append('\n');
+		}
+		GridDataParser parser = new GridDataParser(new ByteArrayInputStream(
+				text.toString().getBytes("US-ASCII")));
+		for (int i = 0; i < numbers.size(); i++) {
+			assertTrue(parser.nextLine(), description + ": line " + i
+					+ " is missing");
+			assertTrue(parser.nextToken(), description + ": line " + i
+					+ " has no first token");
+			int start = parser.tokenStart();
+			int end = parser.tokenEnd();
+			assertTrue(parser.nextToken(), description + ": line " + i
+					+ " has no second token");
+			assertIdentical(numbers.get(numbers.size() - 1 - i), parser
+					.parseDouble(parser.tokenStart(), parser.tokenEnd()),
+					description);
+			assertIdentical(numbers.get(i), parser.parseDouble(start, end),
+					description);
+			assertTrue(!parser.nextToken(), description + ": line " + i
+					+ " has a third token");
+		}
+		assertTrue(!parser.nextLine(), description + ": there are too many lines");
+	}
+
+	/**
+	 * Returns a parser for the given single token, positioned on the token.
+	 *
+	 * @param token
+	 *            the token
+	 * @return the parser
+	 */
+	private static GridDataParser parser(String token) throws IOException {
+		GridDataParser parser = new GridDataParser(new ByteArrayInputStream(
+				token.getBytes("US-ASCII")));
+		assertTrue(parser.nextLine() && parser.nextToken(), "no token in "
+				+ token);
+		return parser;
+	}
+
+	/**
+	 * Fails unless reading the two texts as grid data gives the same data
+	 * points.
+	 *
+	 * @param expected
+	 *            the text giving the expected data points
+	 * @param actual
+	 *            the text giving the actual data points
+	 * @param description
+	 *            the description of the actual text
+	 */
+	private static void assertSameData(String expected, String actual,
+			String description) {
+		double[] expectedX = new double[1000];
+		double[] expectedY = new double[1000];
+		double[] actualX = new double[1000];
+		double[] actualY = new double[1000];
+		int expectedN = new Filter().read(expectedX, expectedY,
+				new ByteArrayInputStream(expected.getBytes()));
+		int actualN = new Filter().read(actualX, actualY,
+				new ByteArrayInputStream(actual.getBytes()));
+		assertTrue(expectedN == actualN, description + ": " + actualN
+				+ " instead of " + expectedN + " data points");
+		for (int i = 0; i < expectedN; i++) {
+			assertTrue(expectedX[i] == actualX[i] && expectedY[i] == actualY[i],
+					description + ": data point " + i + " differs");
+		}
+	}
+
+	/**
+	 * Fails unless reading the given text as grid data fails with the given
+	 * message.
+	 *
+	 * @param text
+	 *            the text
+	 * @param message
+	 *            the expected message
+	 * @param description
+	 *            the description of the text
+	 */
+	private static void assertReadError(String text, String message,
+			String description) {
+		try {
+			new Filter().read(new ByteArrayInputStream(text.getBytes()));
+			fail(description + ": no error");
+		} catch (InvalidValueException e) {
+			assertEquals(message, e.getMessage(), description);
+		}
+	}
+
+	/**
+	 * Fails unless the given value is identical bit for bit to the value
+	 * returned by Double.parseDouble(String) for the given number.
+	 */
+	private static void assertIdentical(String number, double actual,
+			String description) {
+		double expected = Double.parseDouble(number);
+		if (Double.doubleToRawLongBits(expected) != Double
+				.doubleToRawLongBits(actual)) {
+			fail(description + ": " + number + " is parsed as " + actual
+					+ " instead of " + expected);
+		}
+	}
+
+	/** Fails unless the two strings are equal. */
+	private static void assertEquals(String expected, String actual,
+			String description) {
+		if (!expected.equals(actual)) {
+			fail(description + ": \"" + actual + "\" instead of \"" + expected
+					+ "\"");
+		}
+	}
+
+	/** Fails with the given message unless the condition holds. */
+	private static void assertTrue(boolean condition, String message) {
+		if (!condition) {
+			fail(message);
+		}
+	}
+
+	/** Reports the given failure and exits with status 1. */
+	private static void fail(String message) {
+		System.err.println("GridDataParserTest: " + message);
+		System.exit(1);
+	}
+}
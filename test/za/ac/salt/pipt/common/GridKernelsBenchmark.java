@@ -0,0 +1,224 @@
+package za.ac.salt.pipt.common;
+
+import java.util.Random;
+
+/**
+ * Compares the throughput of the scalar and the vectorized backend of
+ * GridKernels for arrays of the size of the default grid, and checks that both
+ * backends give identical results. It must be run with the option
+ * --add-modules jdk.incubator.vector (as the Ant target "benchmark" does);
+ * otherwise only the scalar backend is measured.
+ */
+public class GridKernelsBenchmark {
+
+	/** the number of array elements */
+	private static final int N = 131072;
+
+	/** the number of calls before the time is measured */
+	private static final int WARMUP = 3000;
+
+	/** the number of calls for which the time is measured */
+	private static final int CALLS = 2000;
+
+	/** the number of measurements, of which the fastest is reported */
+	private static final int ROUNDS = 5;
+
+	/** A kernel called by the benchmark. */
+	private interface Kernel {
+		void run(GridKernelBackend backend, double[] y);
+	}
+
+	/** the values used as the second operand */
+	private static double[] z;
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		z = new double[N];
+		for (int i = 0; i < N; i++) {
+			z[i] = i % 17 == 0 ? 0 : 1 + 1e-6 * (random.nextDouble() - 0.5);
+		}
+
+		String[] names = { "add(value)", "add(double[])", "scale(value)",
+				"scale(double[])", "div(double[])", "invert" };
+		Kernel[] kernels = { new Kernel() {
+			public void run(GridKernelBackend backend, double[] y) {
+				backend.add(y, 0, N, 1e-9);
+			}
+		}, new Kernel() {
+			public void run(GridKernelBackend backend, double[] y) {
+				backend.add(y, z, 0, 0, N);
+			}
+		}, new Kernel() {
+			public void run(GridKernelBackend backend, double[] y) {
+				backend.scale(y, 0, N, 1 + 1e-9);
+			}
+		}, new Kernel() {
+			public void run(GridKernelBackend backend, double[] y) {
+				backend.scale(y, z, 0, 0, N);
+			}
+		}, new Kernel() {
+			public void run(GridKernelBackend backend, double[] y) {
+				backend.div(y, z, 0, 0, N);
+			}
+		}, new Kernel() {
+			public void run(GridKernelBackend backend, double[] y) {
+				backend.invert(y, 0, N);
+			}
+		} };
+
+		GridKernelBackend scalar = new ScalarGridKernels();
+		GridKernelBackend vector = GridKernels.createBackend();
+		boolean vectorized = !(vector instanceof ScalarGridKernels);
+		if (vectorized) {
+			int mismatches = check(scalar, vector, random);
+			System.out.println("Mismatches between the backends: " + mismatches);
+			if (mismatches > 0) {
+				System.exit(1);
+			}
+		} else {
+			System.out.println("The Vector API is not available; only the "
+					+ "scalar backend is measured.");
+		}
+
+		System.out.println("Throughput in million elements per second for "
+				+ N + " elements:");
+		System.out.println(String.format("%-16s %10s %10s %8s", "kernel",
+				"scalar", "vector", "speedup"));
+		for (int k = 0; k < kernels.length; k++) {
+			double scalarThroughput = measure(kernels[k], scalar, random);
+			if (vectorized) {
+				double vectorThroughput = measure(kernels[k], vector, random);
+				System.out.println(String.format("%-16s %10.1f %10.1f %8.2f",
+						names[k], scalarThroughput, vectorThroughput,
+						vectorThroughput / scalarThroughput));
+			} else {
+				System.out.println(String.format("%-16s %10.1f", names[k],
+						scalarThroughput));
+			}
+		}
+	}
+
+	/**
+	 * Returns the throughput (in million elements per second) of the given
+	 * kernel for the given backend.
+	 *
+	 * @param kernel
+	 *            the kernel
+	 * @param backend
+	 *            the backend
+	 * @param random
+	 *            the random number generator for the array values
+	 * @return the throughput
+	 */
+	private static double measure(Kernel kernel, GridKernelBackend backend,
+			Random random) {
+		double[] y = new double[N];
+		for (int i = 0; i < N; i++) {
+			y[i] = 1 + random.nextDouble();
+		}
+		for (int i = 0; i < WARMUP; i++) {
+			kernel.run(backend, y);
+		}
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < CALLS; i++) {
+				kernel.run(backend, y);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return (double) N * CALLS / best * 1e3;
+	}
+
+	/**
+	 * Applies all kernels with both backends to random values (including
+	 * zeros, infinite values and NaN) and various index ranges and offsets,
+	 * and returns the number of elements for which the results differ.
+	 *
+	 * @param scalar
+	 *            the scalar backend
+	 * @param vector
+	 *            the vectorized backend
+	 * @param random
+	 *            the random number generator
+	 * @return the number of differing elements
+	 */
+	private static int check(GridKernelBackend scalar,
+			GridKernelBackend vector, Random random) {
+		int mismatches = 0;
+		int length = 1000;
+		for (int trial = 0; trial < 200; trial++) {
+			double[] y = values(random, length);
+			double[] w = values(random, length + 20);
+			int start = random.nextInt(20);
+			int end = length - random.nextInt(20);
+			int offset = random.nextInt(20);
+			double c = random.nextDouble() * 4 - 2;
+			for (int k = 0; k < 6; k++) {
+				double[] a = y.clone();
+				double[] b = y.clone();
+				apply(k, scalar, a, w, offset, start, end, c);
+				apply(k, vector, b, w, offset, start, end, c);
+				for (int i = 0; i < length; i++) {
+					if (Double.doubleToLongBits(a[i]) != Double
+							.doubleToLongBits(b[i])) {
+						mismatches++;
+					}
+				}
+			}
+		}
+		return mismatches;
+	}
+
+	/** Applies the kernel with the given number to the array y. */
+	private static void apply(int kernel, GridKernelBackend backend,
+			double[] y, double[] w, int offset, int start, int end, double c) {
+		switch (kernel) {
+		case 0:
+			backend.add(y, start, end, c);
+			break;
+		case 1:
+			backend.add(y, w, offset, start, end);
+			break;
+		case 2:
+			backend.scale(y, start, end, c);
+			break;
+		case 3:
+			backend.scale(y, w, offset, start, end);
+			break;
+		case 4:
+			backend.div(y, w, offset, start, end);
+			break;
+		default:
+			backend.invert(y, start, end);
+		}
+	}
+
+	/** Returns an array of random values, some of them special. */
+	private static double[] values(Random random, int length) {
+		double[] values = new double[length];
+		for (int i = 0; i < length; i++) {
+			switch (random.nextInt(20)) {
+			case 0:
+				values[i] = 0;
+				break;
+			case 1:
+				values[i] = -0.0;
+				break;
+			case 2:
+				values[i] = Double.NaN;
+				break;
+			case 3:
+				values[i] = Double.POSITIVE_INFINITY;
+				break;
+			case 4:
+				values[i] = Double.MIN_VALUE * random.nextInt(1000);
+				break;
+			default:
+				values[i] = (random.nextDouble() - 0.5)
+						* Math.pow(10, random.nextInt(60) - 30);
+			}
+		}
+		return values;
+	}
+}
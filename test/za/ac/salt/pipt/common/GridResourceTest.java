@@ -0,0 +1,206 @@
+package za.ac.salt.pipt.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import za.ac.salt.pipt.common.dataExchange.InvalidValueException;
+
+/**
+ * Tests that grid resources precompiled by GridResourceCompiler give the same
+ * grids as their text versions, and that binary versions which are out of
+ * date or invalid are not used. The test is run by the Ant target "test", which
+ * precompiles the resources first; it exits with a non-zero status if a check
+ * fails.
+ */
+public class GridResourceTest {
+
+	/** the path of the resource created by the test */
+	private static final String STALE_PATH = "/gridresourcetest/stale.txt";
+
+	public static void main(String[] args) throws IOException {
+		testPrecompiled("/resources/rss_pipt-data/kpnoextinct.dat", false);
+		testPrecompiled("/resources/rss_pipt-data/solar.10A.txt", true);
+		testPrecompiled("/resources/rss_pipt-data/salt.airglow.txt", true);
+		testStale();
+		testWriteError();
+		testGeometry();
+		System.out.println("GridResourceTest: all checks passed");
+	}
+
+	/**
+	 * Checks that the given resource has been precompiled and that reading it
+	 * by means of GridResource gives the same grid as parsing its text.
+	 *
+	 * @param path
+	 *            the path of the resource
+	 * @param spectrum
+	 *            whether the resource is read into a spectrum
+	 */
+	private static void testPrecompiled(String path, boolean spectrum)
+			throws IOException {
+		Grid text = spectrum ? new GridSpectrum() : new Filter();
+		Grid binary = spectrum ? new GridSpectrum() : new Filter();
+		byte[] source = GridResource.readFully(GridResourceTest.class
+				.getResourceAsStream(path));
+		File binaryFile = new File(GridResourceTest.class.getResource(
+				path + GridResource.binarySuffix(binary)).getPath());
+
+		// the binary version must be up to date, so that it is used
+		binary.map(binaryFile, source.length, GridResource.checksum(source));
+
+		text.read(new ByteArrayInputStream(source));
+		assertTrue(new GridResource("", path).read(binary), path
+				+ " could not be read");
+		assertIdentical(text, binary, path);
+	}
+
+	/**
+	 * Checks that a binary version is rejected if its source has changed since
+	 * it was compiled, and that GridResource parses the text instead of an
+	 * invalid binary version.
+	 */
+	private static void testStale() throws IOException {
+		File root = new File(GridResourceTest.class.getResource("/")
+				.getPath());
+		File source = new File(root, STALE_PATH);
+		source.getParentFile().mkdirs();
+		write(source, "4000 1\n5000 2\n6000 3\n");
+		GridResourceCompiler.compile(new Filter(), source);
+		File binaryFile = new File(source.getPath() + GridResource.BINARY_SUFFIX);
+		assertTrue(binaryFile.exists(), "the binary version of " + source
+				+ " has not been written");
+
+		// same length, different content
+		write(source, "4000 1\n5000 7\n6000 3\n");
+		byte[] changed = GridResource.readFully(new FileInputStream(source));
+		try {
+			new Filter().map(binaryFile, changed.length, GridResource
+					.checksum(changed));
+			fail("the out of date binary version of " + source
+					+ " has been mapped");
+		} catch (InvalidValueException e) {
+			assertTrue(e.getMessage().endsWith(
+					"is out of date with respect to its source."),
+					"unexpected message: " + e.getMessage());
+		}
+
+		// a truncated binary version
+		write(binaryFile, "GRD2");
+		Grid expected = new Filter();
+		expected.read(new ByteArrayInputStream(changed));
+		Grid actual = new Filter();
+		assertTrue(new GridResource("", STALE_PATH).read(actual), STALE_PATH
+				+ " could not be read");
+		assertIdentical(expected, actual, STALE_PATH);
+
+		source.delete();
+		binaryFile.delete();
+	}
+
+	/**
+	 * Checks that an error when writing the binary version is reported to the
+	 * caller.
+	 */
+	private static void testWriteError() {
+		File root = new File(GridResourceTest.class.getResource("/")
+				.getPath());
+		String filename = new File(root, "gridresourcetest/missing/x.grid")
+				.getPath();
+		try {
+			new Filter().writeBinary(filename, -1, 0);
+			fail("writing " + filename + " has not failed");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Checks that binary grid data with an absurd number of bins are rejected,
+	 * and that valid data are used without allocating an array for all the
+	 * bins.
+	 */
+	private static void testGeometry() {
+		try {
+			new Filter().readBinary(new ByteArrayInputStream(header(-4, 26)));
+			fail("binary grid data with 2^30 bins have been accepted");
+		} catch (InvalidValueException e) {
+			// expected
+		}
+
+		Grid grid = new Filter();
+		grid.readBinary(new ByteArrayInputStream(header(-4, 20)));
+		assertTrue(grid.n() == 1 << 24 && grid.isMapped() && grid.y == null,
+				"binary grid data with 2^24 bins haven't been used as they are");
+		assertTrue(grid.y(12345) == 0, "a bin outside the data isn't 0");
+	}
+
+	/**
+	 * Returns the header of binary grid data without any ordinate values.
+	 *
+	 * @param k
+	 *            the resolution, as the binary logarithmic value
+	 * @param m
+	 *            the range, as the binary logarithmic value
+	 */
+	private static byte[] header(int k, int m) {
+		ByteBuffer buffer = ByteBuffer.allocate(40).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(Grid.BINARY_MAGIC).putInt(11).putInt(k).putInt(m)
+				.putInt(0).putInt(0).putLong(-1).putLong(0);
+		return buffer.array();
+	}
+
+	/** Writes the given text to the given file. */
+	private static void write(File file, String text) throws IOException {
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(text.getBytes("US-ASCII"));
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	/**
+	 * Fails unless the two grids have the same geometry and identical
+	 * ordinate values.
+	 *
+	 * @param expected
+	 *            the expected grid
+	 * @param actual
+	 *            the actual grid
+	 * @param description
+	 *            the description of the grids
+	 */
+	private static void assertIdentical(Grid expected, Grid actual,
+			String description) {
+		assertTrue(expected.j() == actual.j() && expected.k() == actual.k()
+				&& expected.m() == actual.m(), description
+				+ ": the geometries differ");
+		for (int i = 0; i < expected.n(); i++) {
+			if (Double.doubleToLongBits(expected.y(i)) != Double
+					.doubleToLongBits(actual.y(i))) {
+				fail(description + ": value " + i + " is " + actual.y(i)
+						+ " instead of " + expected.y(i));
+			}
+		}
+	}
+
+	/** Fails with the given message unless the condition holds. */
+	private static void assertTrue(boolean condition, String message) {
+		if (!condition) {
+			fail(message);
+		}
+	}
+
+	/** Reports the given failure and exits with status 1. */
+	private static void fail(String message) {
+		System.err.println("GridResourceTest: " + message);
+		System.exit(1);
+	}
+}
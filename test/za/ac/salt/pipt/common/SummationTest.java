@@ -0,0 +1,126 @@
+package za.ac.salt.pipt.common;
+
+import java.util.Random;
+
+/**
+ * Tests that the sums computed by Summation are reproducible bit for bit,
+ * whether they are computed sequentially, in parallel or by combining block
+ * sums. The test is run by the Ant target "test"; it exits with a non-zero
+ * status if a check fails.
+ */
+public class SummationTest {
+
+	/** the random number generator for the summed values */
+	private static final Random random = new Random(20100101);
+
+	public static void main(String[] args) {
+		testSequentialAndParallel();
+		testSubranges();
+		testCombine();
+		System.out.println("SummationTest: all checks passed");
+	}
+
+	/**
+	 * Checks that whole arrays give the same sum sequentially and in
+	 * parallel, for lengths around the task size and beyond.
+	 */
+	private static void testSequentialAndParallel() {
+		int[] lengths = { 0, 1, 255, 256, 257, 16383, 16384, 16385, 65536,
+				100003, 131072, 1 << 20 };
+		for (int n : lengths) {
+			double[] values = values(n);
+			double sequential = Summation.sum(values, 0, n, false);
+			for (int repetition = 0; repetition < 5; repetition++) {
+				double parallel = Summation.sum(values, 0, n, true);
+				assertIdentical(sequential, parallel, "sum of " + n
+						+ " values");
+			}
+			assertIdentical(sequential, Summation.sum(values, 0, n),
+					"default sum of " + n + " values");
+		}
+	}
+
+	/**
+	 * Checks that arbitrary subranges give the same sum sequentially and in
+	 * parallel.
+	 */
+	private static void testSubranges() {
+		double[] values = values(300000);
+		for (int trial = 0; trial < 200; trial++) {
+			int start = random.nextInt(values.length);
+			int end = start + random.nextInt(values.length - start + 1);
+			assertIdentical(Summation.sum(values, start, end, false), Summation
+					.sum(values, start, end, true), "sum from " + start
+					+ " to " + end);
+		}
+	}
+
+	/**
+	 * Checks that combining the sums of equal blocks, whose length is a power
+	 * of 2 times LEAF_SIZE, gives the sum of the whole range.
+	 */
+	private static void testCombine() {
+		for (int rangeDepth = 0; rangeDepth <= 10; rangeDepth++) {
+			int n = Summation.LEAF_SIZE << rangeDepth;
+			double[] values = values(n);
+			double whole = Summation.sum(values, 0, n, false);
+			for (int blockDepth = 0; blockDepth <= rangeDepth; blockDepth++) {
+				int blockSize = Summation.LEAF_SIZE << blockDepth;
+				int blocks = n / blockSize;
+				double[] sequentialSums = new double[blocks];
+				double[] parallelSums = new double[blocks];
+				for (int b = 0; b < blocks; b++) {
+					sequentialSums[b] = Summation.sum(values, b * blockSize,
+							(b + 1) * blockSize, false);
+					parallelSums[b] = Summation.sum(values, b * blockSize,
+							(b + 1) * blockSize, true);
+				}
+				String description = "combined sums of " + blocks
+						+ " blocks of " + blockSize + " values";
+				assertIdentical(whole, Summation.combine(sequentialSums, 0,
+						blocks), description);
+				assertIdentical(whole, Summation.combine(parallelSums, 0,
+						blocks), description + " (parallel)");
+			}
+		}
+		assertIdentical(0, Summation.combine(new double[0], 0, 0),
+				"combined sums of no blocks");
+	}
+
+	/**
+	 * Returns random values of widely varying magnitude and sign, so that the
+	 * order of summation matters for the rounding.
+	 *
+	 * @param n
+	 *            the number of values
+	 * @return the values
+	 */
+	private static double[] values(int n) {
+		double[] values = new double[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = (random.nextDouble() - 0.3)
+					* Math.pow(10, random.nextInt(24) - 12);
+		}
+		return values;
+	}
+
+	/**
+	 * Fails unless the two values are identical bit for bit.
+	 *
+	 * @param expected
+	 *            the expected value
+	 * @param actual
+	 *            the actual value
+	 * @param description
+	 *            the description of the checked value
+	 */
+	private static void assertIdentical(double expected, double actual,
+			String description) {
+		if (Double.doubleToLongBits(expected) != Double
+				.doubleToLongBits(actual)) {
+			System.err.println("SummationTest: " + description + " is "
+					+ actual + " instead of " + expected);
+			System.exit(1);
+		}
+	}
+}